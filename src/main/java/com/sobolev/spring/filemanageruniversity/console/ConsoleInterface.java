@@ -1,5 +1,16 @@
 package com.sobolev.spring.filemanageruniversity.console;
 
+import com.sobolev.spring.filemanageruniversity.dto.AuditPage;
+import com.sobolev.spring.filemanageruniversity.dto.AuditQuery;
+import com.sobolev.spring.filemanageruniversity.dto.BulkResult;
+import com.sobolev.spring.filemanageruniversity.dto.DirectoryEntry;
+import com.sobolev.spring.filemanageruniversity.dto.DirectoryPage;
+import com.sobolev.spring.filemanageruniversity.dto.DirectoryStats;
+import com.sobolev.spring.filemanageruniversity.dto.FileSort;
+import com.sobolev.spring.filemanageruniversity.dto.FileView;
+import com.sobolev.spring.filemanageruniversity.dto.FollowChunk;
+import com.sobolev.spring.filemanageruniversity.dto.LinePage;
+import com.sobolev.spring.filemanageruniversity.dto.SearchResult;
 import com.sobolev.spring.filemanageruniversity.entity.FileEntity;
 import com.sobolev.spring.filemanageruniversity.entity.OperationType;
 import com.sobolev.spring.filemanageruniversity.entity.User;
@@ -10,12 +21,16 @@ import com.sobolev.spring.filemanageruniversity.util.InputValidator;
 import com.sobolev.spring.filemanageruniversity.util.OutputFormatter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
 
 @Component
 public class ConsoleInterface implements CommandLineRunner {
@@ -27,6 +42,26 @@ public class ConsoleInterface implements CommandLineRunner {
     private final DiskService diskService;
     private final SecurityService securityService;
     private final AuditService auditService;
+    private final AuditQueryService auditQueryService;
+    private final DirectoryListingService directoryListingService;
+    private final DirectoryStatsService directoryStatsService;
+    private final BulkIndexService bulkIndexService;
+    private final BulkFileService bulkFileService;
+    private final LineIndexService lineIndexService;
+    private final SearchIndexService searchIndexService;
+    private final OperationExecutor operationExecutor;
+    private final FileLockManager fileLockManager;
+
+    // Ресурсы операций: файловые операции журналируются в БД, архивы и JSON/XML работают только с диском
+    private static final Set<OperationExecutor.Resource> DB_AND_DISK =
+        Set.of(OperationExecutor.Resource.DB, OperationExecutor.Resource.DISK);
+    private static final Set<OperationExecutor.Resource> DB_ONLY = Set.of(OperationExecutor.Resource.DB);
+    private static final Set<OperationExecutor.Resource> DISK_ONLY = Set.of(OperationExecutor.Resource.DISK);
+
+    private static final int HISTORY_PAGE_SIZE = 20;
+    private static final int FILES_PAGE_SIZE = 20;
+    private static final int TAIL_LINES = 10;
+    private static final long FOLLOW_POLL_INTERVAL_MS = 500;
 
     private User currentUser;
     private Scanner scanner;
@@ -35,7 +70,12 @@ public class ConsoleInterface implements CommandLineRunner {
     public ConsoleInterface(UserService userService, FileService fileService,
                            JsonXmlService jsonXmlService, ZipService zipService,
                            DiskService diskService, SecurityService securityService,
-                           AuditService auditService) {
+                           AuditService auditService, AuditQueryService auditQueryService,
+                           DirectoryListingService directoryListingService,
+                           DirectoryStatsService directoryStatsService,
+                           BulkIndexService bulkIndexService, BulkFileService bulkFileService,
+                           LineIndexService lineIndexService, SearchIndexService searchIndexService,
+                           OperationExecutor operationExecutor, FileLockManager fileLockManager) {
         this.userService = userService;
         this.fileService = fileService;
         this.jsonXmlService = jsonXmlService;
@@ -43,6 +83,15 @@ public class ConsoleInterface implements CommandLineRunner {
         this.diskService = diskService;
         this.securityService = securityService;
         this.auditService = auditService;
+        this.auditQueryService = auditQueryService;
+        this.directoryListingService = directoryListingService;
+        this.directoryStatsService = directoryStatsService;
+        this.bulkIndexService = bulkIndexService;
+        this.bulkFileService = bulkFileService;
+        this.lineIndexService = lineIndexService;
+        this.searchIndexService = searchIndexService;
+        this.operationExecutor = operationExecutor;
+        this.fileLockManager = fileLockManager;
     }
 
     @Override
@@ -136,7 +185,12 @@ public class ConsoleInterface implements CommandLineRunner {
             System.out.println("3. Работа с JSON/XML");
             System.out.println("4. Работа с ZIP архивами");
             System.out.println("5. Мои файлы");
-            System.out.println("6. Выход");
+            System.out.println("6. История операций");
+            System.out.println("7. Статистика директории");
+            System.out.println("8. Индексация директории");
+            System.out.println("9. Поиск по содержимому");
+            System.out.println("10. Статистика блокировок файлов");
+            System.out.println("11. Выход");
             System.out.print("Выберите действие: ");
             
             String choice = scanner.nextLine().trim();
@@ -158,6 +212,21 @@ public class ConsoleInterface implements CommandLineRunner {
                     showUserFiles();
                     break;
                 case "6":
+                    showOperationHistory();
+                    break;
+                case "7":
+                    showDirectoryStats();
+                    break;
+                case "8":
+                    indexDirectory();
+                    break;
+                case "9":
+                    showSearchMenu();
+                    break;
+                case "10":
+                    System.out.println("\n" + OutputFormatter.formatLockStats(fileLockManager.getStats()));
+                    break;
+                case "11":
                     System.out.println("До свидания!");
                     return;
                 default:
@@ -180,7 +249,10 @@ public class ConsoleInterface implements CommandLineRunner {
             System.out.println("5. Переместить файл");
             System.out.println("6. Список файлов в директории");
             System.out.println("7. Информация о файле");
-            System.out.println("8. Назад");
+            System.out.println("8. Массовые операции");
+            System.out.println("9. Дозаписать в файл");
+            System.out.println("10. Просмотр строк / слежение за файлом");
+            System.out.println("11. Назад");
             System.out.print("Выберите действие: ");
             
             String choice = scanner.nextLine().trim();
@@ -209,6 +281,15 @@ public class ConsoleInterface implements CommandLineRunner {
                         getFileInfo();
                         break;
                     case "8":
+                        bulkOperation();
+                        break;
+                    case "9":
+                        appendFile();
+                        break;
+                    case "10":
+                        viewLines();
+                        break;
+                    case "11":
                         return;
                     default:
                         System.out.println("Неверный выбор.");
@@ -227,11 +308,15 @@ public class ConsoleInterface implements CommandLineRunner {
             );
             if (filePath == null) return;
             
-            String content = fileService.readFile(filePath, currentUser);
-            System.out.println("\n📄 Содержимое файла:");
-            System.out.println(OutputFormatter.createSeparator(60));
-            System.out.println(content);
-            System.out.println(OutputFormatter.createSeparator(60));
+            // Потоковый вывод: файл не загружается в память целиком
+            try (InputStream in = operationExecutor.call(DB_AND_DISK,
+                    () -> fileService.openFileStream(filePath, 0, Long.MAX_VALUE, currentUser))) {
+                System.out.println("\n📄 Содержимое файла:");
+                System.out.println(OutputFormatter.createSeparator(60));
+                in.transferTo(System.out);
+                System.out.println();
+                System.out.println(OutputFormatter.createSeparator(60));
+            }
         } catch (Exception e) {
             handleFileOperationException(e, "чтении файла");
         }
@@ -256,13 +341,102 @@ public class ConsoleInterface implements CommandLineRunner {
                 System.out.println("⚠️  Предупреждение: файл будет пустым.");
             }
             
-            fileService.writeFile(filePath, content.toString(), currentUser);
+            operationExecutor.run(DB_AND_DISK, () -> fileService.writeFile(filePath, content.toString(), currentUser));
             System.out.println("✅ Файл успешно сохранен: " + filePath);
         } catch (Exception e) {
             handleFileOperationException(e, "записи файла");
         }
     }
 
+    private void appendFile() {
+        try {
+            String filePath = readInputPath(
+                "Введите путь к файлу (относительный, например: log.txt): ",
+                "log.txt"
+            );
+            if (filePath == null) return;
+            
+            System.out.println("Введите добавляемые строки (для завершения введите пустую строку):");
+            StringBuilder content = new StringBuilder();
+            String line;
+            while (!(line = scanner.nextLine()).isEmpty()) {
+                content.append(line).append("\n");
+            }
+            
+            if (content.length() == 0) {
+                System.out.println("❌ Нечего добавлять.");
+                return;
+            }
+            
+            operationExecutor.run(DB_AND_DISK, () -> fileService.appendFile(filePath, content.toString(), currentUser));
+            System.out.println("✅ Данные добавлены в файл: " + filePath);
+        } catch (Exception e) {
+            handleFileOperationException(e, "дозаписи в файл");
+        }
+    }
+
+    /**
+     * Просмотр строк N..M по индексу строк или слежение за дописываемым файлом (tail -f)
+     */
+    private void viewLines() {
+        try {
+            System.out.print("Режим (1 - строки N..M, 2 - слежение tail -f): ");
+            String mode = scanner.nextLine().trim();
+            if (!mode.equals("1") && !mode.equals("2")) {
+                System.out.println("Неверный выбор.");
+                return;
+            }
+            String filePath = readInputPath(
+                "Введите путь к файлу (относительный, например: log.txt): ",
+                "log.txt"
+            );
+            if (filePath == null) return;
+            
+            if (mode.equals("1")) {
+                long fromLine = readLineNumber("Номер первой строки: ");
+                long toLine = readLineNumber("Номер последней строки: ");
+                LinePage page = lineIndexService.readLines(filePath, fromLine, toLine, currentUser);
+                System.out.println("\n" + OutputFormatter.formatLinePage(page));
+            } else {
+                followFile(filePath);
+            }
+        } catch (Exception e) {
+            handleFileOperationException(e, "просмотре строк файла");
+        }
+    }
+
+    private void followFile(String filePath) throws IOException, InterruptedException {
+        LinePage tail = lineIndexService.tail(filePath, TAIL_LINES, currentUser);
+        System.out.println("\n" + OutputFormatter.formatLinePage(tail));
+        System.out.println("👀 Слежение за файлом, для выхода нажмите Enter...");
+        long position = tail.endOffset();
+        String fileKey = tail.fileKey();
+        // Опрос прекращается, как только пользователь что-либо ввел
+        while (System.in.available() == 0) {
+            FollowChunk chunk = lineIndexService.follow(filePath, position, fileKey, currentUser);
+            if (chunk.truncated()) {
+                System.out.println("⚠️  Файл был усечен или заменен - чтение с начала");
+            }
+            chunk.lines().forEach(System.out::println);
+            position = chunk.position();
+            fileKey = chunk.fileKey();
+            if (chunk.lines().isEmpty()) {
+                Thread.sleep(FOLLOW_POLL_INTERVAL_MS);
+            }
+        }
+        scanner.nextLine();
+    }
+
+    private long readLineNumber(String prompt) {
+        System.out.print(prompt);
+        String input = scanner.nextLine().trim();
+        try {
+            return Long.parseLong(input);
+        } catch (NumberFormatException e) {
+            throw new ValidationException("Некорректный номер строки: " + input);
+        }
+    }
+
     private void deleteFile() {
         try {
             String filePath = readInputPath(
@@ -274,7 +448,7 @@ public class ConsoleInterface implements CommandLineRunner {
             System.out.print("⚠️  Вы уверены, что хотите удалить файл? (yes/no): ");
             String confirm = scanner.nextLine().trim();
             if ("yes".equalsIgnoreCase(confirm)) {
-                fileService.deleteFile(filePath, currentUser);
+                operationExecutor.run(DB_AND_DISK, () -> fileService.deleteFile(filePath, currentUser));
                 System.out.println("✅ Файл успешно удален: " + filePath);
             } else {
                 System.out.println("❌ Операция отменена.");
@@ -298,7 +472,7 @@ public class ConsoleInterface implements CommandLineRunner {
             );
             if (destPath == null) return;
             
-            fileService.copyFile(sourcePath, destPath, currentUser);
+            operationExecutor.run(DB_AND_DISK, () -> fileService.copyFile(sourcePath, destPath, currentUser));
             System.out.println("✅ Файл успешно скопирован из " + sourcePath + " в " + destPath);
         } catch (Exception e) {
             handleFileOperationException(e, "копировании файла");
@@ -319,13 +493,45 @@ public class ConsoleInterface implements CommandLineRunner {
             );
             if (destPath == null) return;
             
-            fileService.moveFile(sourcePath, destPath, currentUser);
+            operationExecutor.run(DB_AND_DISK, () -> fileService.moveFile(sourcePath, destPath, currentUser));
             System.out.println("✅ Файл успешно перемещен из " + sourcePath + " в " + destPath);
         } catch (Exception e) {
             handleFileOperationException(e, "перемещении файла");
         }
     }
 
+    /**
+     * Копирование, перемещение или удаление группы файлов по списку путей и шаблонов
+     */
+    private void bulkOperation() {
+        try {
+            System.out.print("Операция (1 - удалить, 2 - копировать, 3 - переместить): ");
+            String operation = scanner.nextLine().trim();
+            if (!operation.equals("1") && !operation.equals("2") && !operation.equals("3")) {
+                System.out.println("Неверный выбор.");
+                return;
+            }
+            System.out.print("Пути или шаблоны через запятую (например: docs/*.txt, a.txt): ");
+            List<String> patterns = Arrays.asList(scanner.nextLine().split(","));
+            
+            BulkResult result;
+            if (operation.equals("1")) {
+                result = bulkFileService.deleteFiles(patterns, currentUser);
+            } else {
+                String destDir = readInputPath("Введите директорию назначения: ", "backup");
+                if (destDir == null) {
+                    return;
+                }
+                result = operation.equals("2")
+                    ? bulkFileService.copyFiles(patterns, destDir, currentUser)
+                    : bulkFileService.moveFiles(patterns, destDir, currentUser);
+            }
+            System.out.println("\n" + OutputFormatter.formatBulkResult(result));
+        } catch (Exception e) {
+            handleFileOperationException(e, "выполнении массовой операции");
+        }
+    }
+
     private void listFiles() {
         try {
             System.out.print("Введите путь к директории (относительный, для корня введите . или пустую строку): ");
@@ -334,9 +540,24 @@ public class ConsoleInterface implements CommandLineRunner {
                 dirPath = "."; // Текущая директория (корень базовой директории)
             }
             
-            List<String> files = fileService.listFiles(dirPath, currentUser);
+            System.out.print("Фильтр имен, например *.txt (Enter - все): ");
+            String glob = scanner.nextLine().trim();
+            
             System.out.println("\n📁 Файлы в директории (" + dirPath + "):");
-            System.out.println(OutputFormatter.formatSimpleFileList(files));
+            DirectoryEntry cursor = null;
+            while (true) {
+                DirectoryPage page = directoryListingService.listDirectory(dirPath, glob, FileSort.NAME,
+                    cursor, FILES_PAGE_SIZE, currentUser);
+                System.out.println(OutputFormatter.formatDirectoryListing(page.entries()));
+                if (!page.hasNext()) {
+                    break;
+                }
+                System.out.print("Enter - следующая страница, q - выход: ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                    break;
+                }
+                cursor = page.next();
+            }
         } catch (Exception e) {
             handleFileOperationException(e, "получении списка файлов");
         }
@@ -350,7 +571,7 @@ public class ConsoleInterface implements CommandLineRunner {
             );
             if (filePath == null) return;
             
-            FileEntity fileInfo = fileService.getFileInfo(filePath, currentUser);
+            FileEntity fileInfo = operationExecutor.call(DB_AND_DISK, () -> fileService.getFileInfo(filePath, currentUser));
             if (fileInfo != null) {
                 System.out.println("\n" + OutputFormatter.formatFileInfo(fileInfo));
             } else {
@@ -409,7 +630,7 @@ public class ConsoleInterface implements CommandLineRunner {
             );
             if (filePath == null) return;
             
-            Map<String, Object> data = jsonXmlService.readJsonFile(filePath);
+            Map<String, Object> data = operationExecutor.call(DISK_ONLY, () -> jsonXmlService.readJsonFile(filePath));
             System.out.println("\n📄 Содержимое JSON файла:");
             System.out.println(OutputFormatter.formatJsonXmlData(data));
         } catch (Exception e) {
@@ -441,7 +662,7 @@ public class ConsoleInterface implements CommandLineRunner {
                 System.out.println("⚠️  Предупреждение: файл будет пустым.");
             }
             
-            jsonXmlService.writeJsonFile(filePath, data);
+            operationExecutor.run(DISK_ONLY, () -> jsonXmlService.writeJsonFile(filePath, data));
             System.out.println("✅ JSON файл успешно сохранен: " + filePath);
         } catch (Exception e) {
             handleFileOperationException(e, "записи JSON файла");
@@ -456,7 +677,7 @@ public class ConsoleInterface implements CommandLineRunner {
             );
             if (filePath == null) return;
             
-            Map<String, Object> data = jsonXmlService.readXmlFile(filePath);
+            Map<String, Object> data = operationExecutor.call(DISK_ONLY, () -> jsonXmlService.readXmlFile(filePath));
             System.out.println("\n📄 Содержимое XML файла:");
             System.out.println(OutputFormatter.formatJsonXmlData(data));
         } catch (Exception e) {
@@ -488,7 +709,7 @@ public class ConsoleInterface implements CommandLineRunner {
                 System.out.println("⚠️  Предупреждение: файл будет пустым.");
             }
             
-            jsonXmlService.writeXmlFile(filePath, data);
+            operationExecutor.run(DISK_ONLY, () -> jsonXmlService.writeXmlFile(filePath, data));
             System.out.println("✅ XML файл успешно сохранен: " + filePath);
         } catch (Exception e) {
             handleFileOperationException(e, "записи XML файла");
@@ -540,7 +761,7 @@ public class ConsoleInterface implements CommandLineRunner {
             }
             
             String[] filePaths = filesInput.split("\\s+");
-            zipService.createZipArchive(zipPath, filePaths);
+            operationExecutor.run(DISK_ONLY, () -> zipService.createZipArchive(zipPath, filePaths));
             System.out.println("✅ ZIP архив успешно создан: " + zipPath);
         } catch (Exception e) {
             handleFileOperationException(e, "создании ZIP архива");
@@ -561,7 +782,7 @@ public class ConsoleInterface implements CommandLineRunner {
             );
             if (extractPath == null) return;
             
-            zipService.extractZipArchive(zipPath, extractPath);
+            operationExecutor.run(DISK_ONLY, () -> zipService.extractZipArchive(zipPath, extractPath));
             System.out.println("✅ ZIP архив успешно извлечен в: " + extractPath);
         } catch (Exception e) {
             handleFileOperationException(e, "извлечении ZIP архива");
@@ -570,17 +791,149 @@ public class ConsoleInterface implements CommandLineRunner {
 
     private void showUserFiles() {
         try {
-            List<FileEntity> files = fileService.getUserFiles(currentUser);
-            if (files.isEmpty()) {
-                System.out.println("\nУ вас пока нет файлов.");
-            } else {
-                System.out.println("\n" + OutputFormatter.formatFileList(files));
+            System.out.print("Сортировка (1 - по имени, 2 - по размеру, 3 - по дате) [1]: ");
+            FileSort sort = switch (scanner.nextLine().trim()) {
+                case "2" -> FileSort.SIZE;
+                case "3" -> FileSort.DATE;
+                default -> FileSort.NAME;
+            };
+            for (int page = 0; ; page++) {
+                int pageNumber = page;
+                Slice<FileView> files = operationExecutor.call(DB_ONLY,
+                    () -> fileService.getUserFiles(currentUser, sort, pageNumber, FILES_PAGE_SIZE));
+                if (page == 0 && !files.hasContent()) {
+                    System.out.println("\nУ вас пока нет файлов.");
+                    return;
+                }
+                System.out.println("\n" + OutputFormatter.formatFileList(files.getContent()));
+                if (!files.hasNext()) {
+                    return;
+                }
+                System.out.print("Enter - следующая страница, q - выход: ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                    return;
+                }
             }
         } catch (Exception e) {
             handleException(e, "Ошибка при получении списка файлов");
         }
     }
     
+    /**
+     * Размер поддерева и распределение по типам файлов
+     */
+    private void showDirectoryStats() {
+        try {
+            System.out.print("Введите путь к директории (относительный, для корня введите . или пустую строку): ");
+            String dirPath = scanner.nextLine().trim();
+            if (dirPath.isEmpty()) {
+                dirPath = ".";
+            }
+            System.out.println("Подсчет...");
+            DirectoryStats stats = directoryStatsService.computeStats(dirPath, currentUser);
+            System.out.println("\n" + OutputFormatter.formatDirectoryStats(stats));
+        } catch (Exception e) {
+            handleException(e, "Ошибка при подсчете статистики директории");
+        }
+    }
+    
+    /**
+     * Массовая регистрация существующих файлов директории в БД
+     */
+    private void indexDirectory() {
+        try {
+            System.out.print("Введите путь к директории (относительный, для корня введите . или пустую строку): ");
+            String dirPath = scanner.nextLine().trim();
+            if (dirPath.isEmpty()) {
+                dirPath = ".";
+            }
+            System.out.print("Продолжить с контрольной точки? (y/n) [y]: ");
+            boolean resume = !scanner.nextLine().trim().equalsIgnoreCase("n");
+            
+            bulkIndexService.index(dirPath, currentUser, resume,
+                progress -> System.out.println(OutputFormatter.formatIndexProgress(progress)));
+        } catch (Exception e) {
+            handleException(e, "Ошибка при индексации директории");
+        }
+    }
+    
+    /**
+     * Полнотекстовый поиск по файлам текущего пользователя
+     */
+    private void showSearchMenu() {
+        while (true) {
+            System.out.println("\n=== Поиск по содержимому ===");
+            System.out.println("1. Найти");
+            System.out.println("2. Перестроить индекс");
+            System.out.println("3. Назад");
+            System.out.print("Выберите действие: ");
+
+            String choice = scanner.nextLine().trim();
+
+            try {
+                switch (choice) {
+                    case "1":
+                        searchFiles();
+                        break;
+                    case "2":
+                        System.out.println("Перестроение индекса...");
+                        int indexed = searchIndexService.rebuild(currentUser);
+                        System.out.println("✅ Проиндексировано файлов: " + indexed);
+                        break;
+                    case "3":
+                        return;
+                    default:
+                        System.out.println("Неверный выбор. Попробуйте снова.");
+                }
+            } catch (Exception e) {
+                handleException(e, "Ошибка поиска");
+            }
+        }
+    }
+
+    private void searchFiles() throws IOException {
+        System.out.println("Все слова должны встретиться в файле; \"фраза в кавычках\" ищется целиком, "
+            + "слово* - по началу слова.");
+        System.out.print("Запрос: ");
+        String query = scanner.nextLine().trim();
+        SearchResult result = searchIndexService.search(query, currentUser);
+        System.out.println("\n" + OutputFormatter.formatSearchResult(result));
+    }
+    
+    /**
+     * Постраничный просмотр истории операций текущего пользователя
+     */
+    private void showOperationHistory() {
+        try {
+            System.out.print("Тип операции (Enter - все, " + Arrays.toString(OperationType.values()) + "): ");
+            String typeInput = scanner.nextLine().trim();
+            OperationType type = null;
+            if (!typeInput.isEmpty()) {
+                try {
+                    type = OperationType.valueOf(typeInput.toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    throw new ValidationException("Неизвестный тип операции: " + typeInput);
+                }
+            }
+            AuditQuery query = new AuditQuery(currentUser.getId(), type, null, null, null);
+            AuditPage.Cursor cursor = null;
+            while (true) {
+                AuditPage page = auditQueryService.findOperations(query, cursor, HISTORY_PAGE_SIZE);
+                System.out.println("\n" + OutputFormatter.formatOperationHistory(page.items()));
+                if (!page.hasNext()) {
+                    return;
+                }
+                System.out.print("Enter - следующая страница, q - выход: ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                    return;
+                }
+                cursor = page.next();
+            }
+        } catch (Exception e) {
+            handleException(e, "Ошибка при получении истории операций");
+        }
+    }
+    
     // ==================== Вспомогательные методы ====================
     
     /**
@@ -0,0 +1,18 @@
+package com.sobolev.spring.filemanageruniversity.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Страница истории операций с курсором на следующую страницу.
+ * Курсор - (timestamp, id) последней записи; null - страниц больше нет.
+ */
+public record AuditPage(List<OperationView> items, Cursor next) {
+
+    public record Cursor(LocalDateTime timestamp, Long id) {
+    }
+
+    public boolean hasNext() {
+        return next != null;
+    }
+}
@@ -0,0 +1,17 @@
+package com.sobolev.spring.filemanageruniversity.dto;
+
+import com.sobolev.spring.filemanageruniversity.entity.OperationType;
+
+import java.time.LocalDateTime;
+
+/**
+ * Фильтры истории операций; null - фильтр не применяется.
+ * Интервал времени полуоткрытый: [from, to).
+ */
+public record AuditQuery(Long userId, OperationType operationType, Long fileId,
+                         LocalDateTime from, LocalDateTime to) {
+
+    public static AuditQuery forUser(Long userId) {
+        return new AuditQuery(userId, null, null, null, null);
+    }
+}
@@ -0,0 +1,27 @@
+package com.sobolev.spring.filemanageruniversity.dto;
+
+import java.util.List;
+
+/**
+ * Результат массовой операции с итогом по каждому файлу
+ */
+public record BulkResult(List<ItemResult> items) {
+
+    /**
+     * @param error сообщение об ошибке; null - элемент обработан успешно
+     */
+    public record ItemResult(String path, String error) {
+
+        public boolean success() {
+            return error == null;
+        }
+    }
+
+    public long succeeded() {
+        return items.stream().filter(ItemResult::success).count();
+    }
+
+    public long failed() {
+        return items.size() - succeeded();
+    }
+}
@@ -0,0 +1,9 @@
+package com.sobolev.spring.filemanageruniversity.dto;
+
+import java.time.Instant;
+
+/**
+ * Элемент директории с атрибутами, прочитанными при обходе
+ */
+public record DirectoryEntry(String name, long size, Instant lastModified, boolean directory) {
+}
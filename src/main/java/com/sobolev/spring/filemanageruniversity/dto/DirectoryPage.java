@@ -0,0 +1,14 @@
+package com.sobolev.spring.filemanageruniversity.dto;
+
+import java.util.List;
+
+/**
+ * Страница листинга директории. Курсор - последний элемент страницы;
+ * null - страниц больше нет.
+ */
+public record DirectoryPage(List<DirectoryEntry> entries, DirectoryEntry next) {
+
+    public boolean hasNext() {
+        return next != null;
+    }
+}
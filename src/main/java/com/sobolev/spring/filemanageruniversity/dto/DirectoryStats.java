@@ -0,0 +1,18 @@
+package com.sobolev.spring.filemanageruniversity.dto;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Статистика поддерева директории.
+ * complete = false, если обход прерван отменой или по истечении времени -
+ * тогда значения отражают только пройденную часть дерева.
+ */
+public record DirectoryStats(String path, long totalBytes, long fileCount, long directoryCount,
+                             long inaccessibleCount, List<DirectoryEntry> largestFiles,
+                             Map<String, ExtensionStats> byExtension, boolean complete, Duration elapsed) {
+
+    public record ExtensionStats(long fileCount, long totalBytes) {
+    }
+}
@@ -0,0 +1,23 @@
+package com.sobolev.spring.filemanageruniversity.dto;
+
+import org.springframework.data.domain.Sort;
+
+/**
+ * Порядок сортировки списка файлов. id добавляется последним,
+ * чтобы порядок был детерминированным при совпадающих значениях.
+ */
+public enum FileSort {
+    NAME(Sort.by("filename", "id")),
+    SIZE(Sort.by(Sort.Order.desc("size"), Sort.Order.desc("id"))),
+    DATE(Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id")));
+
+    private final Sort sort;
+
+    FileSort(Sort sort) {
+        this.sort = sort;
+    }
+
+    public Sort toSort() {
+        return sort;
+    }
+}
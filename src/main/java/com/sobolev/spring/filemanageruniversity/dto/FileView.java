@@ -0,0 +1,10 @@
+package com.sobolev.spring.filemanageruniversity.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Облегченное представление файла для списков, без управляемой сущности
+ */
+public record FileView(Long id, String filename, Long size, LocalDateTime createdAt,
+                       String fileType, String location) {
+}
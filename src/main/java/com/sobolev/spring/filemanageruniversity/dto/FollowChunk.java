@@ -0,0 +1,13 @@
+package com.sobolev.spring.filemanageruniversity.dto;
+
+import java.util.List;
+
+/**
+ * Строки, дописанные в файл с момента предыдущего опроса (режим tail -f).
+ * @param position смещение, с которого продолжать следующий опрос
+ * @param truncated файл стал короче позиции или по пути теперь другой файл -
+ *                  он был усечен или заменен, чтение продолжено с начала
+ * @param fileKey идентификатор файла (inode), передается в следующий опрос; null, если ФС его не сообщает
+ */
+public record FollowChunk(List<String> lines, long position, boolean truncated, String fileKey) {
+}
@@ -0,0 +1,24 @@
+package com.sobolev.spring.filemanageruniversity.dto;
+
+import java.time.Duration;
+
+/**
+ * Снимок прогресса индексации
+ * @param filesIndexed добавлено новых записей
+ * @param filesSkipped файлы, уже зарегистрированные в БД
+ * @param directoriesSkipped директории, пропущенные по контрольной точке
+ */
+public record IndexProgress(long filesScanned, long filesIndexed, long filesSkipped, long failedFiles,
+                            long directoriesDone, long directoriesSkipped, long bytesHashed,
+                            Duration elapsed, boolean finished) {
+
+    public double filesPerSecond() {
+        double seconds = elapsed.toNanos() / 1e9;
+        return seconds > 0 ? filesScanned / seconds : 0;
+    }
+
+    public double bytesPerSecond() {
+        double seconds = elapsed.toNanos() / 1e9;
+        return seconds > 0 ? bytesHashed / seconds : 0;
+    }
+}
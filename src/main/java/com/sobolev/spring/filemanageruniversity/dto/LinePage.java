@@ -0,0 +1,13 @@
+package com.sobolev.spring.filemanageruniversity.dto;
+
+import java.util.List;
+
+/**
+ * Диапазон строк текстового файла.
+ * @param firstLine номер первой строки диапазона, начиная с 1
+ * @param totalLines число строк в файле на момент чтения
+ * @param endOffset смещение в байтах сразу после последней прочитанной строки
+ * @param fileKey идентификатор прочитанного файла (inode) для слежения; null, если ФС его не сообщает
+ */
+public record LinePage(long firstLine, List<String> lines, long totalLines, long endOffset, String fileKey) {
+}
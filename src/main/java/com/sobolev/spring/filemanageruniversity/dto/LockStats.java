@@ -0,0 +1,14 @@
+package com.sobolev.spring.filemanageruniversity.dto;
+
+/**
+ * Снимок метрик менеджера блокировок файлов.
+ * Время ожидания указано в наносекундах; contended - захваты, которым пришлось ждать.
+ */
+public record LockStats(long readAcquisitions, long writeAcquisitions, long contended,
+                        long totalWaitNanos, long maxWaitNanos,
+                        long optimisticReads, long optimisticFailures) {
+
+    public double averageWaitNanos() {
+        return contended == 0 ? 0 : (double) totalWaitNanos / contended;
+    }
+}
@@ -0,0 +1,12 @@
+package com.sobolev.spring.filemanageruniversity.dto;
+
+import com.sobolev.spring.filemanageruniversity.entity.OperationType;
+
+import java.time.LocalDateTime;
+
+/**
+ * Облегченное представление записи аудита без загрузки связанных сущностей
+ */
+public record OperationView(Long id, LocalDateTime timestamp, OperationType operationType,
+                            Long userId, String username, Long fileId, String filename, String details) {
+}
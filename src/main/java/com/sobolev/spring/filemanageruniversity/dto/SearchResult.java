@@ -0,0 +1,17 @@
+package com.sobolev.spring.filemanageruniversity.dto;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Результат полнотекстового поиска: лучшие совпадения по числу вхождений
+ * @param totalHits число найденных файлов до ограничения выдачи
+ */
+public record SearchResult(List<Hit> hits, int totalHits, Duration elapsed) {
+
+    /**
+     * @param occurrences число вхождений всех условий запроса в файл
+     */
+    public record Hit(String location, int occurrences) {
+    }
+}
@@ -0,0 +1,42 @@
+package com.sobolev.spring.filemanageruniversity.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+@Entity
+@Table(name = "file_chunk_hash",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"file_id", "chunk_index"}))
+@Getter
+@Setter
+@NoArgsConstructor
+public class FileChunkHash {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @NotNull(message = "Файл не может быть null")
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "file_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private FileEntity file;
+
+    @NotNull(message = "Номер блока не может быть null")
+    @Column(name = "chunk_index", nullable = false)
+    private Integer chunkIndex;
+
+    @NotBlank(message = "Хеш блока не может быть пустым")
+    @Column(name = "hash", nullable = false, length = 64)
+    private String hash;
+
+    public FileChunkHash(FileEntity file, Integer chunkIndex, String hash) {
+        this.file = file;
+        this.chunkIndex = chunkIndex;
+        this.hash = hash;
+    }
+}
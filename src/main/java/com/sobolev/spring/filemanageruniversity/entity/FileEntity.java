@@ -11,6 +11,12 @@ import lombok.Setter;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(indexes = {
+    @Index(name = "idx_file_entity_owner", columnList = "owner_id"),
+    @Index(name = "idx_file_entity_location", columnList = "location", unique = true),
+    // Подсчет ссылок на общее содержимое при каждом удалении и перезаписи
+    @Index(name = "idx_file_entity_checksum", columnList = "checksum")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -45,9 +51,18 @@ public class FileEntity {
     @Column(name = "is_archived")
     private Boolean isArchived = false;
 
+    // Для файлов от порога дерева хешей - корень дерева Меркла, иначе SHA-256
     @Column(name = "checksum")
     private String checksum;
 
+    // Быстрый признак изменения, вычисляется при каждой записи
+    @Column(name = "crc32c")
+    private Long crc32c;
+
+    // Размер блока, для которого сохранены хеши в file_chunk_hash; null - хешей блоков нет
+    @Column(name = "chunk_size")
+    private Integer chunkSize;
+
     public FileEntity(String filename, String location, User owner) {
         this.filename = filename;
         this.location = location;
@@ -9,6 +9,11 @@ import lombok.Setter;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(indexes = {
+    @Index(name = "idx_operation_user_timestamp", columnList = "user_id, timestamp"),
+    @Index(name = "idx_operation_file_timestamp", columnList = "file_id, timestamp"),
+    @Index(name = "idx_operation_timestamp_id", columnList = "timestamp, id")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -0,0 +1,25 @@
+package com.sobolev.spring.filemanageruniversity.repository;
+
+import com.sobolev.spring.filemanageruniversity.entity.FileChunkHash;
+import com.sobolev.spring.filemanageruniversity.entity.FileEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface FileChunkHashRepository extends JpaRepository<FileChunkHash, Long> {
+    List<FileChunkHash> findByFileOrderByChunkIndex(FileEntity file);
+
+    @Modifying
+    @Query("delete from FileChunkHash c where c.file = :file")
+    void deleteByFile(@Param("file") FileEntity file);
+
+    @Modifying
+    @Query("delete from FileChunkHash c where c.file = :file and c.chunkIndex >= :fromIndex and c.chunkIndex < :toIndex")
+    void deleteByFileAndIndexRange(@Param("file") FileEntity file, @Param("fromIndex") int fromIndex,
+                                   @Param("toIndex") int toIndex);
+}
@@ -1,15 +1,95 @@
 package com.sobolev.spring.filemanageruniversity.repository;
 
+import com.sobolev.spring.filemanageruniversity.dto.FileView;
 import com.sobolev.spring.filemanageruniversity.entity.FileEntity;
-import com.sobolev.spring.filemanageruniversity.entity.User;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.util.List;
+import java.time.LocalDateTime;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface FileRepository extends JpaRepository<FileEntity, Long> {
     Optional<FileEntity> findByLocation(String location);
-    List<FileEntity> findByOwner(User owner);
+
+    /**
+     * Удаляет записи всех файлов, расположенных под директорией.
+     * Условие LIKE с фиксированным началом использует индекс
+     * idx_file_entity_location_pattern (text_pattern_ops).
+     * @param prefix путь директории с завершающим разделителем
+     */
+    default int deleteByLocationPrefix(String prefix) {
+        String escaped = prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return deleteByLocationLike(escaped + "%");
+    }
+
+    @Modifying
+    @Query("delete from FileEntity f where f.location like :pattern escape '\\'")
+    int deleteByLocationLike(@Param("pattern") String pattern);
+
+    /**
+     * Создает запись файла или обновляет метаданные существующей одним запросом.
+     * Конкурентные записи по одному пути не создают дубликатов благодаря
+     * уникальному индексу на location.
+     * Результат RETURNING * сопоставляется с сущностью по id: если экземпляр с тем же id
+     * уже управляем в текущем контексте, возвращается он с прежними полями. Корректность
+     * опирается на то, что FileMetadataCache отсоединяет загруженные экземпляры; сами
+     * возвращаемые записи нельзя считать актуальными управляемыми сущностями.
+     */
+    @Query(value = "INSERT INTO file_entity (filename, created_at, size, location, owner_id, file_type, is_archived, "
+        + "checksum, crc32c) VALUES (:filename, :createdAt, :size, :location, :ownerId, :fileType, false, "
+        + "CAST(:checksum AS VARCHAR), CAST(:crc32c AS BIGINT)) "
+        + "ON CONFLICT (location) DO UPDATE SET created_at = EXCLUDED.created_at, size = EXCLUDED.size, "
+        + "file_type = EXCLUDED.file_type, checksum = EXCLUDED.checksum, crc32c = EXCLUDED.crc32c "
+        + "RETURNING *", nativeQuery = true)
+    FileEntity upsertByLocation(@Param("filename") String filename, @Param("createdAt") LocalDateTime createdAt,
+                                @Param("size") long size, @Param("location") String location,
+                                @Param("ownerId") Long ownerId, @Param("fileType") String fileType,
+                                @Param("checksum") String checksum, @Param("crc32c") Long crc32c);
+
+    /**
+     * Регистрирует файл, если записи по этому пути еще нет, и возвращает актуальную запись.
+     * Пустое обновление при конфликте нужно, чтобы RETURNING вернул существующую строку.
+     * Как и для upsertByLocation, актуальность результата опирается на отсоединение
+     * экземпляров в FileMetadataCache.
+     */
+    @Query(value = "INSERT INTO file_entity (filename, created_at, size, location, owner_id, file_type, is_archived, "
+        + "checksum, crc32c) VALUES (:filename, :createdAt, :size, :location, :ownerId, :fileType, false, "
+        + "CAST(:checksum AS VARCHAR), CAST(:crc32c AS BIGINT)) "
+        + "ON CONFLICT (location) DO UPDATE SET location = EXCLUDED.location "
+        + "RETURNING *", nativeQuery = true)
+    FileEntity insertIfAbsent(@Param("filename") String filename, @Param("createdAt") LocalDateTime createdAt,
+                              @Param("size") long size, @Param("location") String location,
+                              @Param("ownerId") Long ownerId, @Param("fileType") String fileType,
+                              @Param("checksum") String checksum, @Param("crc32c") Long crc32c);
+
+    /**
+     * Переносит запись на новый путь, не затрагивая остальные столбцы:
+     * сохранение закэшированного снимка перезаписало бы их прежними значениями
+     */
+    @Modifying
+    @Query("update FileEntity f set f.location = :location, f.filename = :filename where f.id = :id")
+    int updateLocation(@Param("id") Long id, @Param("location") String location,
+                       @Param("filename") String filename);
+
+    // Slice не выполняет запрос count(*) по всем файлам владельца
+    @Query("select new com.sobolev.spring.filemanageruniversity.dto.FileView(f.id, f.filename, f.size, "
+        + "f.createdAt, f.fileType, f.location) from FileEntity f where f.owner.id = :ownerId")
+    Slice<FileView> findViewsByOwnerId(@Param("ownerId") Long ownerId, Pageable pageable);
+
+    @Query("select new com.sobolev.spring.filemanageruniversity.dto.FileView(f.id, f.filename, f.size, "
+        + "f.createdAt, f.fileType, f.location) from FileEntity f where f.owner.id = :ownerId")
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<FileView> streamViewsByOwnerId(@Param("ownerId") Long ownerId, Sort sort);
+
+    long countByChecksum(String checksum);
 }
@@ -0,0 +1,133 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Пакетная запись событий аудита в таблицу operation.
+ * Небольшие пакеты пишутся через JDBC batch, массовая загрузка на Postgres
+ * выполняется через COPY во временную таблицу.
+ */
+@Component
+public class AuditBatchWriter {
+
+    // Как и при загрузке через COPY: события удаленных пользователей отбрасываются,
+    // ссылка на удаленный файл обнуляется, как при ON DELETE SET NULL
+    private static final String INSERT_SQL =
+        "INSERT INTO operation (timestamp, operation_type, file_id, user_id, details) "
+            + "SELECT ?, ?, (SELECT id FROM file_entity WHERE id = ?), u.id, ? FROM users u WHERE u.id = ?";
+
+    // Временная таблица удаляется при фиксации; seq сохраняет порядок событий
+    private static final String CREATE_STAGE_SQL =
+        "CREATE TEMP TABLE audit_stage (seq BIGSERIAL, timestamp TIMESTAMP, operation_type VARCHAR(50), "
+            + "file_id BIGINT, user_id BIGINT, details VARCHAR(1000)) ON COMMIT DROP";
+
+    private static final String COPY_STAGE_SQL =
+        "COPY audit_stage (timestamp, operation_type, file_id, user_id, details) FROM STDIN WITH (FORMAT csv)";
+
+    // События удаленных пользователей отбрасываются, ссылки на удаленные файлы обнуляются
+    private static final String INSERT_FROM_STAGE_SQL =
+        "INSERT INTO operation (timestamp, operation_type, file_id, user_id, details) "
+            + "SELECT s.timestamp, s.operation_type, f.id, s.user_id, s.details FROM audit_stage s "
+            + "JOIN users u ON u.id = s.user_id LEFT JOIN file_entity f ON f.id = s.file_id ORDER BY s.seq";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public AuditBatchWriter(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Массовая загрузка событий в одной транзакции: COPY на Postgres,
+     * JDBC batch для остальных БД
+     */
+    public void load(List<AuditEvent> events) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Boolean copied = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+                if (!connection.isWrapperFor(PGConnection.class)) {
+                    return false;
+                }
+                copy(connection, events);
+                return true;
+            });
+            if (!Boolean.TRUE.equals(copied)) {
+                write(events);
+            }
+        });
+    }
+
+    public void write(List<AuditEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, events, events.size(), (statement, event) -> {
+            statement.setTimestamp(1, Timestamp.valueOf(event.timestamp()));
+            statement.setString(2, event.operationType().name());
+            statement.setObject(3, event.fileId(), Types.BIGINT);
+            statement.setString(4, event.details());
+            statement.setLong(5, event.userId());
+        });
+    }
+
+    /**
+     * Записывает события по одному, удаляя из списка обработанные.
+     * События, которые БД отвергает по содержимому, отбрасываются.
+     * При другой ошибке исключение пробрасывается, а первым в списке
+     * остается событие, запись которого не удалась.
+     * @return число отброшенных событий
+     */
+    public int writeEach(List<AuditEvent> events) {
+        int rejected = 0;
+        Iterator<AuditEvent> iterator = events.iterator();
+        while (iterator.hasNext()) {
+            try {
+                write(List.of(iterator.next()));
+            } catch (DataIntegrityViolationException e) {
+                rejected++;
+            }
+            iterator.remove();
+        }
+        return rejected;
+    }
+
+    private static void copy(Connection connection, List<AuditEvent> events) throws SQLException {
+        StringBuilder csv = new StringBuilder(events.size() * 128);
+        for (AuditEvent event : events) {
+            csv.append(event.timestamp()).append(',')
+                .append(event.operationType().name()).append(',')
+                .append(event.fileId() != null ? event.fileId() : "").append(',')
+                .append(event.userId()).append(',');
+            if (event.details() != null) {
+                csv.append('"').append(event.details().replace("\"", "\"\"")).append('"');
+            }
+            csv.append('\n');
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_STAGE_SQL);
+            connection.unwrap(PGConnection.class).getCopyAPI()
+                .copyIn(COPY_STAGE_SQL, new StringReader(csv.toString()));
+            statement.executeUpdate(INSERT_FROM_STAGE_SQL);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
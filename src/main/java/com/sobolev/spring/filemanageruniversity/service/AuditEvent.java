@@ -0,0 +1,13 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.entity.OperationType;
+
+import java.time.LocalDateTime;
+
+/**
+ * Запись журнала аудита, ожидающая записи в таблицу operation.
+ * Хранит идентификаторы вместо сущностей, чтобы не зависеть от сессии JPA.
+ */
+public record AuditEvent(LocalDateTime timestamp, OperationType operationType,
+                         Long userId, Long fileId, String details) {
+}
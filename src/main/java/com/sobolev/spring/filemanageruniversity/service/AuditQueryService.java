@@ -0,0 +1,103 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.dto.AuditPage;
+import com.sobolev.spring.filemanageruniversity.dto.AuditQuery;
+import com.sobolev.spring.filemanageruniversity.dto.OperationView;
+import com.sobolev.spring.filemanageruniversity.entity.FileEntity;
+import com.sobolev.spring.filemanageruniversity.entity.Operation;
+import com.sobolev.spring.filemanageruniversity.entity.User;
+import com.sobolev.spring.filemanageruniversity.exception.ValidationException;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Запросы к истории операций.
+ * Страницы выбираются по ключу (timestamp, id) от новых к старым, а не через OFFSET,
+ * поэтому стоимость запроса не растет с номером страницы. Результат - проекция
+ * OperationView, сущности Operation/User/FileEntity не загружаются.
+ */
+@Service
+public class AuditQueryService {
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final EntityManager entityManager;
+
+    @Autowired
+    public AuditQueryService(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * @param after курсор предыдущей страницы; null - первая страница
+     */
+    @Transactional(readOnly = true)
+    public AuditPage findOperations(AuditQuery query, AuditPage.Cursor after, int pageSize) {
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<OperationView> cq = cb.createQuery(OperationView.class);
+        Root<Operation> operation = cq.from(Operation.class);
+        Join<Operation, User> user = operation.join("user");
+        Join<Operation, FileEntity> file = operation.join("file", JoinType.LEFT);
+        Path<LocalDateTime> timestamp = operation.get("timestamp");
+        Path<Long> id = operation.get("id");
+
+        cq.select(cb.construct(OperationView.class, id, timestamp, operation.get("operationType"),
+            user.get("id"), user.get("username"), file.get("id"), file.get("filename"),
+            operation.get("details")));
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (query.userId() != null) {
+            predicates.add(cb.equal(user.get("id"), query.userId()));
+        }
+        if (query.operationType() != null) {
+            predicates.add(cb.equal(operation.get("operationType"), query.operationType()));
+        }
+        if (query.fileId() != null) {
+            predicates.add(cb.equal(file.get("id"), query.fileId()));
+        }
+        if (query.from() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(timestamp, query.from()));
+        }
+        if (query.to() != null) {
+            predicates.add(cb.lessThan(timestamp, query.to()));
+        }
+        if (after != null) {
+            // Строго после курсора в порядке (timestamp DESC, id DESC). Условие OR само по себе
+            // не ограничивает диапазон индекса - отдельное timestamp <= курсора делает его sargable
+            predicates.add(cb.lessThanOrEqualTo(timestamp, after.timestamp()));
+            predicates.add(cb.or(
+                cb.lessThan(timestamp, after.timestamp()),
+                cb.and(cb.equal(timestamp, after.timestamp()), cb.lessThan(id, after.id()))));
+        }
+        cq.where(predicates.toArray(new Predicate[0]));
+        cq.orderBy(cb.desc(timestamp), cb.desc(id));
+
+        // Лишняя запись показывает, есть ли следующая страница
+        List<OperationView> rows = entityManager.createQuery(cq)
+            .setMaxResults(pageSize + 1)
+            .getResultList();
+        if (rows.size() <= pageSize) {
+            return new AuditPage(rows, null);
+        }
+        List<OperationView> items = rows.subList(0, pageSize);
+        OperationView last = items.get(pageSize - 1);
+        return new AuditPage(List.copyOf(items), new AuditPage.Cursor(last.timestamp(), last.id()));
+    }
+}
@@ -4,26 +4,153 @@ import com.sobolev.spring.filemanageruniversity.entity.FileEntity;
 import com.sobolev.spring.filemanageruniversity.entity.Operation;
 import com.sobolev.spring.filemanageruniversity.entity.OperationType;
 import com.sobolev.spring.filemanageruniversity.entity.User;
+import com.sobolev.spring.filemanageruniversity.exception.ValidationException;
 import com.sobolev.spring.filemanageruniversity.repository.OperationRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 
+/**
+ * Журнал аудита операций.
+ * В режиме sync запись сохраняется в транзакции вызывающего кода.
+ * В режиме async событие после фиксации транзакции попадает в ограниченный
+ * кольцевой буфер, а фоновый поток записывает накопленное пакетами JDBC.
+ * При остановке приложения буфер дописывается до конца.
+ * В режиме wal событие сначала записывается в локальный журнал (AuditWal),
+ * откуда загружается в БД пакетами - операции не зависят от доступности БД.
+ */
 @Service
 public class AuditService {
 
+    public enum Mode {
+        SYNC,
+        ASYNC,
+        WAL
+    }
+
+    public enum Backpressure {
+        BLOCK,       // вызывающий поток ждет свободного места
+        DROP,        // событие отбрасывается и учитывается в счетчике
+        CALLER_RUNS  // вызывающий поток записывает событие сам
+    }
+
     private final OperationRepository operationRepository;
+    private final AuditBatchWriter batchWriter;
+    private final AuditWal auditWal;
+
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final AtomicLong failedEvents = new AtomicLong();
+
+    // Пакет, который фоновый поток не смог записать до остановки; читается после join
+    private final List<AuditEvent> unwritten = new ArrayList<>();
+
+    @Value("${filemanager.audit.mode:sync}")
+    private String modeProperty; // sync, async или wal
+
+    @Value("${filemanager.audit.buffer.capacity:8192}")
+    private int bufferCapacity;
+
+    @Value("${filemanager.audit.batch.size:500}")
+    private int batchSize;
+
+    @Value("${filemanager.audit.flush.interval.ms:200}")
+    private long flushIntervalMs; // Максимальная задержка записи события
+
+    @Value("${filemanager.audit.backpressure:block}")
+    private String backpressureProperty; // block, drop или caller_runs
+
+    @Value("${filemanager.audit.max.attempts:10}")
+    private int maxAttempts; // Попыток записать событие, после которых оно отбрасывается
+
+    private Mode mode;
+    private Backpressure backpressure;
+    private BlockingQueue<AuditEvent> buffer;
+    private Thread writerThread;
+    private volatile boolean running;
+    // Постановка в буфер идет под чтением, остановка - под записью: после
+    // выключения running ни одно событие не попадет в буфер, который уже не читается
+    private final ReentrantReadWriteLock enqueueGate = new ReentrantReadWriteLock();
 
     @Autowired
-    public AuditService(OperationRepository operationRepository) {
+    public AuditService(OperationRepository operationRepository, AuditBatchWriter batchWriter, AuditWal auditWal) {
         this.operationRepository = operationRepository;
+        this.batchWriter = batchWriter;
+        this.auditWal = auditWal;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        mode = parse(Mode.class, modeProperty, "filemanager.audit.mode");
+        backpressure = parse(Backpressure.class, backpressureProperty, "filemanager.audit.backpressure");
+        if (mode == Mode.WAL) {
+            auditWal.start();
+            return;
+        }
+        if (mode != Mode.ASYNC) {
+            return;
+        }
+        if (bufferCapacity <= 0 || batchSize <= 0 || maxAttempts <= 0) {
+            throw new ValidationException("Размер буфера, пакета и число попыток аудита должны быть положительными");
+        }
+        buffer = new ArrayBlockingQueue<>(bufferCapacity);
+        running = true;
+        writerThread = new Thread(this::drainLoop, "audit-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (mode == Mode.WAL) {
+            auditWal.stop();
+            return;
+        }
+        if (writerThread == null) {
+            return;
+        }
+        // Поток дописывает оставшиеся события и завершается сам
+        enqueueGate.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            enqueueGate.writeLock().unlock();
+        }
+        writerThread.join();
+        // Незаписанный пакет и события, попавшие в буфер в момент остановки
+        List<AuditEvent> rest = new ArrayList<>(unwritten);
+        buffer.drainTo(rest);
+        try {
+            failedEvents.addAndGet(batchWriter.writeEach(rest));
+        } catch (RuntimeException e) {
+            // БД недоступна при остановке - оставшиеся события потеряны
+            failedEvents.addAndGet(rest.size());
+        }
     }
 
     @Transactional
     public void logOperation(User user, OperationType operationType, FileEntity file, String details) {
+        if (mode != Mode.SYNC) {
+            AuditEvent event = new AuditEvent(LocalDateTime.now(), operationType, user.getId(),
+                file != null ? file.getId() : null, details);
+            enqueueAfterCommit(event);
+            return;
+        }
         Operation operation = new Operation();
         operation.setTimestamp(LocalDateTime.now());
         operation.setOperationType(operationType);
@@ -37,5 +164,144 @@ public class AuditService {
     public void logOperation(User user, OperationType operationType, String details) {
         logOperation(user, operationType, null, details);
     }
-}
 
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * @return число событий, отброшенных после ошибок записи в БД
+     */
+    public long getFailedEvents() {
+        return failedEvents.get();
+    }
+
+    public int getPendingEvents() {
+        return buffer != null ? buffer.size() : 0;
+    }
+
+    private void enqueueAfterCommit(AuditEvent event) {
+        // Как и в синхронном режиме, операции откаченных транзакций не журналируются
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(event);
+                }
+            });
+        } else {
+            enqueue(event);
+        }
+    }
+
+    private void enqueue(AuditEvent event) {
+        if (mode == Mode.WAL) {
+            appendToWal(event);
+            return;
+        }
+        boolean accepted;
+        enqueueGate.readLock().lock();
+        try {
+            accepted = running && offer(event);
+        } finally {
+            enqueueGate.readLock().unlock();
+        }
+        if (!accepted) {
+            // Фоновый поток уже остановлен или буфер не принял событие - пишем сразу
+            batchWriter.write(List.of(event));
+        }
+    }
+
+    /**
+     * @return false, если событие должен записать вызывающий поток
+     */
+    private boolean offer(AuditEvent event) {
+        return switch (backpressure) {
+            case BLOCK -> {
+                try {
+                    buffer.put(event);
+                    yield true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    yield false;
+                }
+            }
+            case DROP -> {
+                if (!buffer.offer(event)) {
+                    droppedEvents.incrementAndGet();
+                }
+                yield true;
+            }
+            case CALLER_RUNS -> buffer.offer(event);
+        };
+    }
+
+    private void appendToWal(AuditEvent event) {
+        try {
+            auditWal.append(event);
+        } catch (IOException e) {
+            // Журнал недоступен - событие пишется напрямую в БД
+            batchWriter.write(List.of(event));
+        }
+    }
+
+    /**
+     * После ошибки пакет повторяется по одному событию: событие, которое БД
+     * отвергает по содержимому, отбрасывается, а событие, не записанное за
+     * maxAttempts попыток, отбрасывается с учетом в счетчике failedEvents,
+     * чтобы одно некорректное событие не останавливало журнал.
+     */
+    private void drainLoop() {
+        List<AuditEvent> batch = new ArrayList<>(batchSize);
+        int attempts = 0;
+        while (running || !buffer.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    AuditEvent first = buffer.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                }
+                buffer.drainTo(batch, batchSize - batch.size());
+                if (attempts == 0) {
+                    batchWriter.write(batch);
+                    batch.clear();
+                } else {
+                    failedEvents.addAndGet(batchWriter.writeEach(batch));
+                }
+                attempts = 0;
+            } catch (InterruptedException e) {
+                // Остановка управляется флагом running - дописываем буфер
+            } catch (RuntimeException e) {
+                // БД недоступна или событие некорректно - пакет сохраняется и записывается повторно
+                if (++attempts > maxAttempts && !batch.isEmpty()) {
+                    batch.remove(0);
+                    failedEvents.incrementAndGet();
+                    attempts = 1;
+                }
+                if (!running) {
+                    unwritten.addAll(batch);
+                    return;
+                }
+                sleepQuietly(flushIntervalMs);
+            }
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static <E extends Enum<E>> E parse(Class<E> type, String value, String property) {
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Недопустимое значение " + property + ": " + value);
+        }
+    }
+}
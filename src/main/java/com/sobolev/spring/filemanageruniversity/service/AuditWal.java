@@ -0,0 +1,358 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.entity.OperationType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Локальный журнал предзаписи (WAL) событий аудита.
+ * События дописываются в сегментные файлы записями вида [длина][CRC32C][данные],
+ * fsync выполняется группой: один вызов force покрывает все записи, добавленные
+ * к этому моменту другими потоками. Фоновый загрузчик закрывает текущий сегмент
+ * и переносит закрытые сегменты в таблицу operation, после чего удаляет их.
+ * Сегменты, не перенесенные до остановки, загружаются при следующем запуске.
+ * Доставка - не менее одного раза: сбой между загрузкой и удалением сегмента
+ * приводит к повторной загрузке. Сегмент, который не удалось загрузить за
+ * maxAttempts попыток, переносится в подкаталог quarantine и не блокирует
+ * загрузку следующих.
+ */
+@Component
+public class AuditWal {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_SIZE = 8; // длина и CRC32C записи
+    private static final String QUARANTINE_DIRECTORY = "quarantine";
+
+    private final AuditBatchWriter batchWriter;
+
+    @Value("${filemanager.audit.wal.directory:./audit-wal}")
+    private String directoryProperty;
+
+    @Value("${filemanager.audit.wal.segment.size:16777216}")
+    private long segmentSize; // 16MB по умолчанию
+
+    @Value("${filemanager.audit.wal.ship.interval.ms:1000}")
+    private long shipIntervalMs;
+
+    @Value("${filemanager.audit.wal.max.attempts:10}")
+    private int maxAttempts; // Попыток загрузки сегмента до переноса в quarantine
+
+    // Порядок захвата: syncLock, затем appendLock. ReentrantLock вместо synchronized:
+    // под блокировками выполняются write и force, а монитор закрепил бы виртуальный поток
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    private Path directory;
+    private FileChannel active;
+    private volatile long activeSequence;
+    private long activeWritten;
+    private long appendedTotal;
+    private long syncedTotal;
+
+    // Неудачные попытки загрузки по номеру сегмента; используется только загрузчиком
+    private final Map<Long, Integer> failedAttempts = new HashMap<>();
+    private final AtomicLong quarantinedSegments = new AtomicLong();
+
+    private Thread loaderThread;
+    private volatile boolean running;
+
+    @Autowired
+    public AuditWal(AuditBatchWriter batchWriter) {
+        this.batchWriter = batchWriter;
+    }
+
+    /**
+     * Открывает журнал и запускает загрузчик; оставшиеся с прошлого запуска
+     * сегменты загружаются первыми
+     */
+    public void start() throws IOException {
+        directory = Paths.get(directoryProperty).toAbsolutePath().normalize();
+        Files.createDirectories(directory);
+        long maxSequence = 0;
+        for (Path segment : listSegments()) {
+            maxSequence = Math.max(maxSequence, sequenceOf(segment));
+        }
+        appendLock.lock();
+        try {
+            openSegment(maxSequence + 1);
+        } finally {
+            appendLock.unlock();
+        }
+        running = true;
+        loaderThread = new Thread(this::loaderLoop, "audit-wal-loader");
+        loaderThread.setDaemon(true);
+        loaderThread.start();
+    }
+
+    public void stop() throws InterruptedException {
+        if (loaderThread == null) {
+            return;
+        }
+        running = false;
+        loaderThread.interrupt();
+        loaderThread.join();
+        try {
+            roll();
+            shipSealedSegments();
+            appendLock.lock();
+            try {
+                active.close();
+                // Пустой сегмент, открытый последним, не нужен
+                Files.deleteIfExists(segmentPath(activeSequence));
+            } finally {
+                appendLock.unlock();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Незагруженные сегменты останутся на диске и будут загружены при следующем запуске
+        }
+    }
+
+    /**
+     * @return число сегментов, перенесенных в quarantine после неудачных загрузок
+     */
+    public long getQuarantinedSegments() {
+        return quarantinedSegments.get();
+    }
+
+    /**
+     * Добавляет событие и возвращает управление после его записи на диск
+     */
+    public void append(AuditEvent event) throws IOException {
+        byte[] payload = encode(event);
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+
+        long position;
+        boolean full;
+        appendLock.lock();
+        try {
+            while (record.hasRemaining()) {
+                active.write(record);
+            }
+            activeWritten += record.capacity();
+            appendedTotal += record.capacity();
+            position = appendedTotal;
+            full = activeWritten >= segmentSize;
+        } finally {
+            appendLock.unlock();
+        }
+        sync(position);
+        if (full) {
+            roll();
+        }
+    }
+
+    /**
+     * Групповой fsync: поток, дождавшийся блокировки, сбрасывает на диск все
+     * добавленное к этому моменту, остальные видят, что их запись уже покрыта
+     */
+    private void sync(long position) throws IOException {
+        syncLock.lock();
+        try {
+            if (syncedTotal >= position) {
+                return;
+            }
+            long upTo;
+            FileChannel channel;
+            appendLock.lock();
+            try {
+                upTo = appendedTotal;
+                channel = active;
+            } finally {
+                appendLock.unlock();
+            }
+            channel.force(false);
+            syncedTotal = upTo;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Закрывает текущий сегмент, если в нем есть записи, и открывает следующий
+     */
+    private void roll() throws IOException {
+        syncLock.lock();
+        appendLock.lock();
+        try {
+            if (activeWritten == 0) {
+                return;
+            }
+            active.force(false);
+            active.close();
+            syncedTotal = appendedTotal;
+            openSegment(activeSequence + 1);
+        } finally {
+            appendLock.unlock();
+            syncLock.unlock();
+        }
+    }
+
+    private void openSegment(long sequence) throws IOException {
+        active = FileChannel.open(segmentPath(sequence), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        activeSequence = sequence;
+        activeWritten = active.size();
+    }
+
+    private void loaderLoop() {
+        while (running) {
+            try {
+                roll();
+                shipSealedSegments();
+            } catch (IOException | RuntimeException e) {
+                // БД недоступна - сегменты остаются на диске до следующей попытки
+            }
+            try {
+                Thread.sleep(shipIntervalMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void shipSealedSegments() throws IOException {
+        long current = activeSequence;
+        IOException firstFailure = null;
+        for (Path segment : listSegments()) {
+            long sequence = sequenceOf(segment);
+            if (sequence >= current) {
+                continue;
+            }
+            try {
+                List<AuditEvent> events = readSegment(segment);
+                if (!events.isEmpty()) {
+                    batchWriter.load(events);
+                }
+                Files.delete(segment);
+                failedAttempts.remove(sequence);
+            } catch (IOException | RuntimeException e) {
+                if (failedAttempts.merge(sequence, 1, Integer::sum) >= maxAttempts) {
+                    quarantine(segment);
+                    failedAttempts.remove(sequence);
+                } else if (firstFailure == null) {
+                    firstFailure = e instanceof IOException io ? io : new IOException(e);
+                }
+            }
+        }
+        if (firstFailure != null) {
+            throw firstFailure;
+        }
+    }
+
+    private void quarantine(Path segment) throws IOException {
+        Path quarantine = directory.resolve(QUARANTINE_DIRECTORY);
+        Files.createDirectories(quarantine);
+        Files.move(segment, quarantine.resolve(segment.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        quarantinedSegments.incrementAndGet();
+    }
+
+    /**
+     * Читает записи сегмента до конца файла или до первой неполной либо
+     * поврежденной записи (хвост, не успевший попасть на диск при сбое)
+     */
+    private List<AuditEvent> readSegment(Path segment) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        List<AuditEvent> events = new ArrayList<>();
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int length = buffer.getInt();
+            int expectedCrc = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            if ((int) crc.getValue() != expectedCrc) {
+                break;
+            }
+            events.add(decode(payload));
+        }
+        return events;
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .filter(path -> {
+                    String name = path.getFileName().toString();
+                    return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                })
+                .sorted()
+                .toList();
+        }
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    }
+
+    private static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static byte[] encode(AuditEvent event) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(event.timestamp().toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(event.timestamp().getNano());
+            out.writeUTF(event.operationType().name());
+            out.writeLong(event.userId());
+            out.writeBoolean(event.fileId() != null);
+            out.writeLong(event.fileId() != null ? event.fileId() : 0);
+            out.writeBoolean(event.details() != null);
+            byte[] details = event.details() != null
+                ? event.details().getBytes(StandardCharsets.UTF_8) : new byte[0];
+            out.writeInt(details.length);
+            out.write(details);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static AuditEvent decode(byte[] payload) {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(in.getLong(), in.getInt(), ZoneOffset.UTC);
+        byte[] typeName = new byte[in.getShort() & 0xFFFF];
+        in.get(typeName);
+        OperationType operationType = OperationType.valueOf(new String(typeName, StandardCharsets.UTF_8));
+        long userId = in.getLong();
+        boolean hasFile = in.get() != 0;
+        long fileId = in.getLong();
+        boolean hasDetails = in.get() != 0;
+        byte[] details = new byte[in.getInt()];
+        in.get(details);
+        return new AuditEvent(timestamp, operationType, userId, hasFile ? fileId : null,
+            hasDetails ? new String(details, StandardCharsets.UTF_8) : null);
+    }
+}
@@ -0,0 +1,230 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.repository.FileRepository;
+import com.sobolev.spring.filemanageruniversity.util.FileNameUtils;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище содержимого с адресацией по SHA-256 (дедупликация).
+ * Каждое уникальное содержимое хранится один раз в виде файла blobs/ab/cd/&lt;checksum&gt;,
+ * а файлы пользователей в базовой директории являются жесткими ссылками на него.
+ * FileEntity.location по-прежнему указывает на логический путь, счетчиком ссылок
+ * служит количество записей file_entity с тем же checksum.
+ */
+@Service
+public class BlobStoreService {
+
+    private final FileRepository fileRepository;
+    private final ChecksumCache checksumCache;
+
+    @Value("${filemanager.dedup.enabled:false}")
+    private boolean enabled;
+
+    @Value("${filemanager.dedup.directory:./blobs}")
+    private String blobDirectory;
+
+    @Autowired
+    public BlobStoreService(FileRepository fileRepository, ChecksumCache checksumCache) {
+        this.fileRepository = fileRepository;
+        this.checksumCache = checksumCache;
+    }
+
+    @PostConstruct
+    public void startGarbageCollection() {
+        if (!enabled) {
+            return;
+        }
+        // Сборка мусора при старте выполняется в фоне, чтобы не задерживать запуск
+        Thread collector = new Thread(this::collectGarbage, "blob-store-gc");
+        collector.setDaemon(true);
+        collector.start();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Path getBlobRoot() {
+        return Paths.get(blobDirectory).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Помещает содержимое файла в хранилище. Если такое содержимое уже есть,
+     * файл заменяется жесткой ссылкой на существующий blob.
+     * Вызывающий код должен удерживать эксклюзивную блокировку пути. Контрольная
+     * сумма принимается, только если ChecksumCache подтверждает ее для текущих
+     * атрибутов файла: файл мог быть изменен вне файлового менеджера без изменения размера.
+     */
+    public void adopt(Path file, String checksum) {
+        if (!enabled || checksum == null) {
+            return;
+        }
+        Path blob = blobPath(checksum);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!checksum.equals(checksumCache.get(file, attributes))) {
+                return;
+            }
+            if (Files.exists(blob)) {
+                if (Files.isSameFile(blob, file)) {
+                    return;
+                }
+                if (Files.size(blob) != attributes.size()) {
+                    return;
+                }
+                replaceWithLink(blob, file);
+                // Путь теперь указывает на inode blob-а - атрибуты в кэше устарели
+                checksumCache.put(file, Files.readAttributes(file, BasicFileAttributes.class), checksum);
+            } else {
+                Files.createDirectories(blob.getParent());
+                Files.createLink(blob, file);
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            // Файловая система не поддерживает жесткие ссылки - файл остается без дедупликации
+        }
+    }
+
+    /**
+     * Создает копию без чтения данных: dest становится ссылкой на blob.
+     * Копия создается, только если source уже является ссылкой на этот blob (см. adopt),
+     * поэтому устаревшая контрольная сумма не приведет к копированию чужого содержимого.
+     * Вызывающий код должен удерживать блокировки обоих путей.
+     * @return false, если копировать нужно обычным способом
+     */
+    public boolean linkCopy(String checksum, Path source, Path dest) {
+        if (!enabled || checksum == null) {
+            return false;
+        }
+        Path blob = blobPath(checksum);
+        try {
+            if (!Files.exists(blob) || !Files.isSameFile(blob, source)) {
+                return false;
+            }
+            replaceWithLink(blob, dest);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Готовит файл к полной перезаписи: если он разделяет содержимое с другими
+     * ссылками, ссылка удаляется, и запись создаст новый inode вместо порчи blob.
+     * Проверка выполняется и при выключенной дедупликации, чтобы не испортить
+     * содержимое, сохраненное ранее.
+     */
+    public void prepareForOverwrite(Path file) throws IOException {
+        if (Files.exists(file) && linkCount(file) > 1) {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Готовит файл к частичной записи: если он разделяет содержимое с другими
+     * ссылками, содержимое копируется в собственный inode, чтобы запись на месте
+     * не испортила blob и остальные копии.
+     */
+    public void prepareForPartialWrite(Path file) throws IOException {
+        if (!Files.exists(file) || linkCount(file) <= 1) {
+            return;
+        }
+        Path temp = FileNameUtils.temporarySibling(file, "copy");
+        try {
+            Files.copy(file, temp, StandardCopyOption.COPY_ATTRIBUTES);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Освобождает ссылку на содержимое. Blob удаляется, когда на него
+     * не ссылается ни одна запись file_entity.
+     */
+    public void release(String checksum) {
+        if (!enabled || checksum == null) {
+            return;
+        }
+        if (fileRepository.countByChecksum(checksum) == 0) {
+            try {
+                Files.deleteIfExists(blobPath(checksum));
+            } catch (IOException ignored) {
+                // Blob будет удален при следующей сборке мусора
+            }
+        }
+    }
+
+    /**
+     * Удаляет blob-ы, на которые не ссылается ни одна запись file_entity
+     * или ни один файл в базовой директории.
+     * Удаление blob-а безопасно: пока существует хотя бы одна жесткая ссылка,
+     * данные файла пользователя остаются на диске.
+     * @return количество удаленных blob-ов
+     */
+    public int collectGarbage() {
+        Path root = getBlobRoot();
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+        int reclaimed = 0;
+        try (Stream<Path> blobs = Files.walk(root)) {
+            Iterator<Path> iterator = blobs.filter(Files::isRegularFile).iterator();
+            while (iterator.hasNext()) {
+                Path blob = iterator.next();
+                String checksum = blob.getFileName().toString();
+                if (linkCount(blob) <= 1 || fileRepository.countByChecksum(checksum) == 0) {
+                    if (Files.deleteIfExists(blob)) {
+                        reclaimed++;
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Сборка мусора не должна влиять на работу приложения
+        }
+        return reclaimed;
+    }
+
+    private Path blobPath(String checksum) {
+        Path root = getBlobRoot();
+        if (checksum.length() < 4) {
+            return root.resolve(checksum);
+        }
+        return root.resolve(checksum.substring(0, 2))
+                .resolve(checksum.substring(2, 4))
+                .resolve(checksum);
+    }
+
+    /**
+     * Атомарно заменяет target жесткой ссылкой на blob
+     */
+    private void replaceWithLink(Path blob, Path target) throws IOException {
+        Path temp = FileNameUtils.temporarySibling(target, "link");
+        Files.createLink(temp, blob);
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    private int linkCount(Path file) {
+        try {
+            return (Integer) Files.getAttribute(file, "unix:nlink");
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.dto.BulkResult;
+import com.sobolev.spring.filemanageruniversity.entity.OperationType;
+import com.sobolev.spring.filemanageruniversity.entity.User;
+import com.sobolev.spring.filemanageruniversity.exception.FileNotFoundException;
+import com.sobolev.spring.filemanageruniversity.exception.ValidationException;
+import com.sobolev.spring.filemanageruniversity.util.FileNameUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Массовые операции копирования, перемещения и удаления.
+ * Операции с файловой системой выполняются параллельно через OperationExecutor,
+ * затем изменения file_entity для всех успешно обработанных файлов применяются
+ * пакетными запросами в одной транзакции, и в журнал аудита пишется одна
+ * итоговая запись вместо записи на каждый файл. Если эта транзакция откатилась,
+ * все элементы, обработанные на диске, считаются неудачными: их метаданные не сохранены.
+ * Пути принимаются списком; элементы с символами *, ?, [ или { раскрываются
+ * как glob-шаблоны относительно базовой директории.
+ */
+@Service
+public class BulkFileService {
+
+    private static final String DELETE_SQL =
+        "DELETE FROM file_entity WHERE location = ANY(?) RETURNING checksum";
+
+    private static final String MOVE_SQL =
+        "UPDATE file_entity SET location = ?, filename = ? WHERE location = ?";
+
+    // Запись копии строится по атрибутам скопированного файла и не зависит от наличия
+    // записи источника. Хеши блоков не копируются: chunk_size сбрасывается, дерево
+    // будет построено при следующей записи
+    private static final String COPY_SQL =
+        "INSERT INTO file_entity (filename, created_at, size, location, owner_id, file_type, is_archived, "
+            + "checksum, crc32c) VALUES (?, ?, ?, ?, ?, ?, false, ?, NULL) "
+            + "ON CONFLICT (location) DO UPDATE SET filename = EXCLUDED.filename, created_at = EXCLUDED.created_at, "
+            + "size = EXCLUDED.size, file_type = EXCLUDED.file_type, checksum = EXCLUDED.checksum, "
+            + "crc32c = NULL, chunk_size = NULL";
+
+    private static final String DELETE_CHUNKS_SQL =
+        "DELETE FROM file_chunk_hash WHERE file_id IN (SELECT id FROM file_entity WHERE location = ANY(?))";
+
+    private static final int MAX_AUDIT_DETAILS = 1000;
+
+    private final SecurityService securityService;
+    private final AuditService auditService;
+    private final OperationExecutor operationExecutor;
+    private final BlobStoreService blobStoreService;
+    private final FileMetadataCache metadataCache;
+    private final FileLockManager fileLockManager;
+    private final ChecksumCache checksumCache;
+    private final SearchIndexService searchIndexService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public BulkFileService(SecurityService securityService, AuditService auditService,
+                           OperationExecutor operationExecutor, BlobStoreService blobStoreService,
+                           FileMetadataCache metadataCache, FileLockManager fileLockManager,
+                           ChecksumCache checksumCache, SearchIndexService searchIndexService,
+                           JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.securityService = securityService;
+        this.auditService = auditService;
+        this.operationExecutor = operationExecutor;
+        this.blobStoreService = blobStoreService;
+        this.metadataCache = metadataCache;
+        this.fileLockManager = fileLockManager;
+        this.checksumCache = checksumCache;
+        this.searchIndexService = searchIndexService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    public BulkResult deleteFiles(List<String> patterns, User user) throws IOException {
+        List<Path> sources = resolve(patterns);
+        List<Outcome> outcomes = runAll(sources.stream()
+            .map(source -> new Item(source, null))
+            .toList(), item -> {
+                try (FileLockManager.Handle lock = fileLockManager.lockWrite(item.source())) {
+                    Files.delete(item.source());
+                }
+                return null;
+            });
+
+        List<Path> deleted = succeededSources(outcomes);
+        List<Outcome> committed = commit(outcomes, () -> {
+            List<String> checksums = deleteRows(deleted);
+            checksums.forEach(blobStoreService::release);
+            auditService.logOperation(user, OperationType.DELETE, null,
+                summary("Массовое удаление", outcomes));
+        });
+        deleted.forEach(path -> {
+            forget(path);
+            searchIndexService.scheduleRemove(path);
+        });
+        return toResult(committed);
+    }
+
+    public BulkResult copyFiles(List<String> patterns, String destDirectory, User user) throws IOException {
+        List<Item> items = withDestinations(resolve(patterns), destDirectory);
+        List<Outcome> outcomes = runAll(items, this::copy);
+
+        List<Outcome> copied = outcomes.stream().filter(outcome -> outcome.error() == null).toList();
+        List<Path> destinations = copied.stream().map(outcome -> outcome.item().dest()).toList();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Outcome> committed = commit(outcomes, () -> {
+            // Перезаписанные копией файлы теряют прежнее содержимое и хеши блоков
+            List<String> replaced = checksumsOf(destinations);
+            updateByLocations(DELETE_CHUNKS_SQL, destinations);
+            jdbcTemplate.batchUpdate(COPY_SQL, copied, copied.size(), (statement, outcome) -> {
+                Path dest = outcome.item().dest();
+                String fileName = dest.getFileName().toString();
+                statement.setString(1, fileName);
+                statement.setTimestamp(2, now);
+                statement.setLong(3, outcome.copy().size());
+                statement.setString(4, dest.toString());
+                statement.setLong(5, user.getId());
+                statement.setString(6, FileNameUtils.getExtension(fileName));
+                statement.setString(7, outcome.copy().checksum());
+            });
+            replaced.forEach(blobStoreService::release);
+            auditService.logOperation(user, OperationType.CREATE, null,
+                summary("Массовое копирование в " + destDirectory, outcomes));
+        });
+        copied.forEach(outcome -> {
+            Path dest = outcome.item().dest();
+            forget(dest);
+            if (outcome.copy().checksum() != null) {
+                try {
+                    checksumCache.put(dest, Files.readAttributes(dest, BasicFileAttributes.class),
+                        outcome.copy().checksum());
+                } catch (IOException e) {
+                    // Копия уже изменена или удалена - сумма будет вычислена при следующем обращении
+                }
+            }
+            searchIndexService.scheduleIndex(dest, user.getId());
+        });
+        return toResult(committed);
+    }
+
+    /**
+     * Копирует файл как FileService.copyFile: при дедупликации копия становится
+     * ссылкой на blob, если контрольная сумма источника подтверждена кэшем для его
+     * текущих атрибутов; тогда оба пути блокируются эксклюзивно
+     */
+    private Copy copy(Item item) throws IOException {
+        securityService.validateFileSize(Files.size(item.source()));
+        try (FileLockManager.Handle lock = blobStoreService.isEnabled()
+                ? fileLockManager.lockForMove(item.source(), item.dest())
+                : fileLockManager.lockForCopy(item.source(), item.dest())) {
+            BasicFileAttributes attributes = Files.readAttributes(item.source(), BasicFileAttributes.class);
+            String checksum = checksumCache.get(item.source(), attributes);
+            if (blobStoreService.isEnabled()) {
+                blobStoreService.adopt(item.source(), checksum);
+            }
+            if (!blobStoreService.linkCopy(checksum, item.source(), item.dest())) {
+                blobStoreService.prepareForOverwrite(item.dest());
+                Files.copy(item.source(), item.dest(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.COPY_ATTRIBUTES);
+            }
+            return new Copy(attributes.size(), checksum);
+        }
+    }
+
+    public BulkResult moveFiles(List<String> patterns, String destDirectory, User user) throws IOException {
+        List<Item> items = withDestinations(resolve(patterns), destDirectory);
+        List<Outcome> outcomes = runAll(items, item -> {
+            try (FileLockManager.Handle lock = fileLockManager.lockForMove(item.source(), item.dest())) {
+                Files.move(item.source(), item.dest(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            }
+            return null;
+        });
+
+        List<Item> moved = succeededItems(outcomes);
+        List<Outcome> committed = commit(outcomes, () -> {
+            // Записи замененных файлов назначения удаляются до переноса - location уникален
+            List<String> checksums = deleteRows(moved.stream().map(Item::dest).toList());
+            jdbcTemplate.batchUpdate(MOVE_SQL, moved, moved.size(), (statement, item) -> {
+                statement.setString(1, item.dest().toString());
+                statement.setString(2, item.dest().getFileName().toString());
+                statement.setString(3, item.source().toString());
+            });
+            checksums.forEach(blobStoreService::release);
+            auditService.logOperation(user, OperationType.MODIFY, null,
+                summary("Массовое перемещение в " + destDirectory, outcomes));
+        });
+        moved.forEach(item -> {
+            forget(item.source());
+            forget(item.dest());
+            searchIndexService.scheduleMove(item.source(), item.dest());
+        });
+        return toResult(committed);
+    }
+
+    /**
+     * Применяет изменения БД одной транзакцией. При откате изменения на диске уже
+     * выполнены, а метаданные нет, поэтому все успешные элементы помечаются неудачными.
+     */
+    private List<Outcome> commit(List<Outcome> outcomes, Runnable changes) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> changes.run());
+            return outcomes;
+        } catch (RuntimeException e) {
+            String error = "Метаданные не сохранены: " + messageOf(e);
+            return outcomes.stream()
+                .map(outcome -> outcome.error() == null ? new Outcome(outcome.item(), error, null) : outcome)
+                .toList();
+        }
+    }
+
+    /**
+     * Раскрывает список путей и glob-шаблонов в список существующих файлов без повторов
+     */
+    public List<Path> resolve(List<String> patterns) throws IOException {
+        Set<Path> result = new LinkedHashSet<>();
+        for (String pattern : patterns) {
+            String trimmed = pattern.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (!isGlob(trimmed)) {
+                result.add(securityService.validateAndNormalizePath(trimmed));
+                continue;
+            }
+            result.addAll(expandGlob(trimmed));
+        }
+        if (result.isEmpty()) {
+            throw new ValidationException("Не указано ни одного файла");
+        }
+        return new ArrayList<>(result);
+    }
+
+    private List<Path> expandGlob(String pattern) throws IOException {
+        Path base = securityService.getBaseDirectory();
+        // Обход начинается с самой длинной части пути без шаблонов
+        String[] segments = pattern.split("/");
+        int fixed = 0;
+        while (fixed < segments.length - 1 && !isGlob(segments[fixed])) {
+            fixed++;
+        }
+        Path start = fixed == 0 ? base
+            : securityService.validateAndNormalizePath(String.join("/", List.of(segments).subList(0, fixed)));
+        if (!Files.isDirectory(start)) {
+            throw new FileNotFoundException("Директория не найдена: " + base.relativize(start));
+        }
+        int maxDepth = pattern.contains("**") ? Integer.MAX_VALUE : segments.length - fixed;
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+
+        List<Path> matches = new ArrayList<>();
+        Files.walkFileTree(start, EnumSet.noneOf(FileVisitOption.class), maxDepth, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && matcher.matches(base.relativize(file))) {
+                    matches.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return matches;
+    }
+
+    private static boolean isGlob(String pattern) {
+        return pattern.chars().anyMatch(c -> c == '*' || c == '?' || c == '[' || c == '{');
+    }
+
+    private List<Item> withDestinations(List<Path> sources, String destDirectory) throws IOException {
+        Path destDir = securityService.validateAndNormalizePath(destDirectory);
+        Files.createDirectories(destDir);
+        List<Item> items = new ArrayList<>(sources.size());
+        for (Path source : sources) {
+            items.add(new Item(source, destDir.resolve(source.getFileName())));
+        }
+        return items;
+    }
+
+    private List<Outcome> runAll(List<Item> items, FileAction action) {
+        Set<Path> destinations = new HashSet<>();
+        List<CompletableFuture<Copy>> futures = new ArrayList<>(items.size());
+        for (Item item : items) {
+            // Несколько источников с одинаковым именем перезаписали бы друг друга
+            if (item.dest() != null && (!destinations.add(item.dest()) || item.dest().equals(item.source()))) {
+                futures.add(CompletableFuture.failedFuture(
+                    new ValidationException("Конфликт пути назначения: " + item.dest().getFileName())));
+                continue;
+            }
+            futures.add(operationExecutor.submit(EnumSet.of(OperationExecutor.Resource.DISK), () -> {
+                if (!Files.isRegularFile(item.source(), LinkOption.NOFOLLOW_LINKS)) {
+                    throw new FileNotFoundException(relative(item.source()));
+                }
+                return action.apply(item);
+            }));
+        }
+        List<Outcome> outcomes = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            try {
+                outcomes.add(new Outcome(items.get(i), null, futures.get(i).join()));
+            } catch (CompletionException e) {
+                outcomes.add(new Outcome(items.get(i), messageOf(e.getCause() != null ? e.getCause() : e), null));
+            }
+        }
+        return outcomes;
+    }
+
+    private static String messageOf(Throwable e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    private void updateByLocations(String sql, List<Path> locations) {
+        if (locations.isEmpty()) {
+            return;
+        }
+        String[] values = locations.stream().map(Path::toString).toArray(String[]::new);
+        jdbcTemplate.update(connection -> {
+            var statement = connection.prepareStatement(sql);
+            statement.setArray(1, connection.createArrayOf("varchar", values));
+            return statement;
+        });
+    }
+
+    private List<String> deleteRows(List<Path> locations) {
+        if (locations.isEmpty()) {
+            return List.of();
+        }
+        String[] values = locations.stream().map(Path::toString).toArray(String[]::new);
+        return jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(DELETE_SQL);
+            statement.setArray(1, connection.createArrayOf("varchar", values));
+            return statement;
+        }, (rs, rowNum) -> rs.getString(1)).stream()
+            .filter(checksum -> checksum != null)
+            .toList();
+    }
+
+    private List<String> checksumsOf(List<Path> locations) {
+        if (locations.isEmpty()) {
+            return List.of();
+        }
+        String[] values = locations.stream().map(Path::toString).toArray(String[]::new);
+        return jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(
+                "SELECT checksum FROM file_entity WHERE location = ANY(?) AND checksum IS NOT NULL");
+            statement.setArray(1, connection.createArrayOf("varchar", values));
+            return statement;
+        }, (rs, rowNum) -> rs.getString(1));
+    }
+
+    private void forget(Path path) {
+        metadataCache.evict(path.toString());
+        checksumCache.invalidate(path);
+    }
+
+    private String summary(String action, List<Outcome> outcomes) {
+        long failed = outcomes.stream().filter(outcome -> outcome.error() != null).count();
+        StringBuilder details = new StringBuilder(action)
+            .append(": ").append(outcomes.size() - failed).append(" файлов, ошибок ").append(failed);
+        String separator = " (";
+        for (Outcome outcome : outcomes) {
+            if (outcome.error() == null) {
+                continue;
+            }
+            String entry = separator + relative(outcome.item().source());
+            if (details.length() + entry.length() + 5 > MAX_AUDIT_DETAILS) {
+                details.append(", ...");
+                break;
+            }
+            details.append(entry);
+            separator = ", ";
+        }
+        if (!separator.equals(" (")) {
+            details.append(')');
+        }
+        return details.toString();
+    }
+
+    private BulkResult toResult(List<Outcome> outcomes) {
+        return new BulkResult(outcomes.stream()
+            .map(outcome -> new BulkResult.ItemResult(relative(outcome.item().source()), outcome.error()))
+            .toList());
+    }
+
+    private String relative(Path path) {
+        return securityService.getBaseDirectory().relativize(path).toString();
+    }
+
+    private static List<Path> succeededSources(List<Outcome> outcomes) {
+        return succeededItems(outcomes).stream().map(Item::source).toList();
+    }
+
+    private static List<Item> succeededItems(List<Outcome> outcomes) {
+        return outcomes.stream()
+            .filter(outcome -> outcome.error() == null)
+            .map(Outcome::item)
+            .toList();
+    }
+
+    private record Item(Path source, Path dest) {
+    }
+
+    /**
+     * @param copy результат копирования; null для остальных операций и неудачных элементов
+     */
+    private record Outcome(Item item, String error, Copy copy) {
+    }
+
+    /**
+     * Размер скопированного файла и подтвержденная контрольная сумма источника (или null)
+     */
+    private record Copy(long size, String checksum) {
+    }
+
+    @FunctionalInterface
+    private interface FileAction {
+        Copy apply(Item item) throws IOException;
+    }
+}
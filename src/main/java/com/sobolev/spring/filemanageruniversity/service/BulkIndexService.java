@@ -0,0 +1,435 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.dto.IndexProgress;
+import com.sobolev.spring.filemanageruniversity.entity.OperationType;
+import com.sobolev.spring.filemanageruniversity.entity.User;
+import com.sobolev.spring.filemanageruniversity.exception.FileNotFoundException;
+import com.sobolev.spring.filemanageruniversity.exception.ValidationException;
+import com.sobolev.spring.filemanageruniversity.util.FileNameUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Массовая начальная индексация дерева файлов в file_entity.
+ * Один поток обходит дерево и ставит в ограниченную очередь части директорий
+ * по batchSize файлов, чтобы файлы одной большой директории хешировались
+ * параллельно. Рабочие потоки хешируют файлы и копят строки в собственных пакетах,
+ * которые пишутся одним JDBC batch с ON CONFLICT DO NOTHING - уже
+ * зарегистрированные файлы не изменяются.
+ * Директория отмечается в файле контрольной точки только после успешной записи
+ * строк всех ее частей, поэтому прерванная или частично неудачная индексация
+ * продолжается с незавершенных директорий.
+ * Для файлов, хешируемых деревом, сохраняется только корень - хеши блоков
+ * появятся при следующей записи файла.
+ */
+@Service
+public class BulkIndexService {
+
+    private static final String INSERT_SQL =
+        "INSERT INTO file_entity (filename, created_at, size, location, owner_id, file_type, is_archived, "
+            + "checksum, crc32c) VALUES (?, ?, ?, ?, ?, ?, false, ?, ?) ON CONFLICT (location) DO NOTHING";
+
+    // Признак конца очереди для рабочих потоков
+    private static final SliceJob END = new SliceJob(null, List.of());
+
+    private final SecurityService securityService;
+    private final AuditService auditService;
+    private final ContentHasher contentHasher;
+    private final ChecksumCache checksumCache;
+    private final HashPolicy hashPolicy;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${filemanager.indexer.threads:0}")
+    private int threads; // 0 - по числу процессоров
+
+    @Value("${filemanager.indexer.batch.size:1000}")
+    private int batchSize;
+
+    @Value("${filemanager.indexer.checkpoint.file:./indexer-checkpoint.dat}")
+    private String checkpointFile;
+
+    @Value("${filemanager.indexer.progress.interval.ms:2000}")
+    private long progressIntervalMs;
+
+    @Autowired
+    public BulkIndexService(SecurityService securityService, AuditService auditService,
+                            ContentHasher contentHasher, ChecksumCache checksumCache, HashPolicy hashPolicy,
+                            JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.securityService = securityService;
+        this.auditService = auditService;
+        this.contentHasher = contentHasher;
+        this.checksumCache = checksumCache;
+        this.hashPolicy = hashPolicy;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Индексирует директорию и все поддиректории, регистрируя новые файлы за owner
+     * @param resume продолжить с контрольной точки; false - начать заново
+     * @param progressListener получает снимки прогресса периодически и по завершении
+     */
+    public IndexProgress index(String directoryPath, User owner, boolean resume,
+                               Consumer<IndexProgress> progressListener) throws IOException, InterruptedException {
+        Path root = securityService.validateAndNormalizePath(directoryPath);
+        if (!Files.exists(root)) {
+            throw new FileNotFoundException("Директория не найдена: " + directoryPath);
+        }
+        if (!Files.isDirectory(root)) {
+            throw new ValidationException("Указанный путь не является директорией: " + directoryPath);
+        }
+        if (batchSize <= 0) {
+            throw new ValidationException("Размер пакета индексации должен быть положительным");
+        }
+
+        Path checkpointPath = Paths.get(checkpointFile).toAbsolutePath().normalize();
+        if (!resume) {
+            Files.deleteIfExists(checkpointPath);
+        }
+        int workerCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        Run run = new Run(owner.getId(), checkpointPath, workerCount);
+        List<Thread> workers = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(run::workerLoop, "bulk-indexer-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bulk-indexer-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> progressListener.accept(run.snapshot(false)),
+            progressIntervalMs, progressIntervalMs, TimeUnit.MILLISECONDS);
+
+        try (BufferedWriter checkpoint = Files.newBufferedWriter(checkpointPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            run.checkpoint = checkpoint;
+            try {
+                run.scan(root);
+            } finally {
+                for (int i = 0; i < workerCount; i++) {
+                    if (!run.enqueue(END)) {
+                        break;
+                    }
+                }
+                for (Thread worker : workers) {
+                    worker.join();
+                }
+                reporter.shutdownNow();
+            }
+        }
+
+        IndexProgress result = run.snapshot(true);
+        if (run.failedBatches.get() == 0 && run.failedDirectories.isEmpty() && !run.aborted) {
+            // Индексация завершена полностью - контрольная точка больше не нужна
+            Files.deleteIfExists(checkpointPath);
+        }
+        auditService.logOperation(owner, OperationType.CREATE, null, "Индексация директории: " + directoryPath
+            + " (добавлено " + result.filesIndexed() + ", уже было " + result.filesSkipped()
+            + ", ошибок " + result.failedFiles() + ")");
+        progressListener.accept(result);
+        return result;
+    }
+
+    /**
+     * Директория, поставленная в очередь частями; отмечается завершенной,
+     * когда записаны строки последней из частей
+     */
+    private static final class Directory {
+
+        private final Path path;
+        private final AtomicInteger pendingSlices;
+
+        Directory(Path path, int slices) {
+            this.path = path;
+            this.pendingSlices = new AtomicInteger(slices);
+        }
+    }
+
+    private record SliceJob(Directory directory, List<Path> files) {
+    }
+
+    private record Row(String filename, Timestamp createdAt, long size, String location,
+                       String fileType, String checksum, Long crc32c) {
+    }
+
+    /**
+     * Состояние одного запуска индексации
+     */
+    private final class Run {
+
+        private final Long ownerId;
+        private final Set<String> completedDirectories;
+        private final BlockingQueue<SliceJob> queue = new ArrayBlockingQueue<>(1024);
+        private final long startNanos = System.nanoTime();
+
+        private final AtomicLong filesScanned = new AtomicLong();
+        private final AtomicLong filesIndexed = new AtomicLong();
+        private final AtomicLong filesSkipped = new AtomicLong();
+        private final AtomicLong failedFiles = new AtomicLong();
+        private final AtomicLong directoriesDone = new AtomicLong();
+        private final AtomicLong directoriesSkipped = new AtomicLong();
+        private final AtomicLong bytesHashed = new AtomicLong();
+        private final AtomicLong failedBatches = new AtomicLong();
+        // Директории, часть строк которых не записана; в контрольную точку не попадают
+        private final Set<Path> failedDirectories = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger liveWorkers;
+        // Все рабочие потоки завершились раньше времени - обход прерван
+        private volatile boolean aborted;
+
+        private BufferedWriter checkpoint;
+
+        Run(Long ownerId, Path checkpointPath, int workerCount) throws IOException {
+            this.ownerId = ownerId;
+            this.liveWorkers = new AtomicInteger(workerCount);
+            this.completedDirectories = Files.exists(checkpointPath)
+                ? new HashSet<>(Files.readAllLines(checkpointPath, StandardCharsets.UTF_8))
+                : new HashSet<>();
+        }
+
+        /**
+         * Обходит дерево и ставит в очередь части директорий, не отмеченных в контрольной точке
+         */
+        void scan(Path root) throws IOException, InterruptedException {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                    if (completedDirectories.contains(dir.toString())) {
+                        directoriesSkipped.incrementAndGet();
+                        return FileVisitResult.CONTINUE;
+                    }
+                    List<Path> files = new ArrayList<>();
+                    try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir,
+                            entry -> Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS))) {
+                        entries.forEach(files::add);
+                    } catch (IOException e) {
+                        failedFiles.incrementAndGet();
+                        return FileVisitResult.CONTINUE;
+                    }
+                    // Пустая директория ставится одной пустой частью, чтобы попасть в контрольную точку
+                    int slices = (int) Math.max(1, (files.size() + (long) batchSize - 1) / batchSize);
+                    Directory directory = new Directory(dir, slices);
+                    try {
+                        for (int i = 0; i < slices; i++) {
+                            int from = i * batchSize;
+                            List<Path> slice = files.subList(from, Math.min(files.size(), from + batchSize));
+                            if (!enqueue(new SliceJob(directory, slice))) {
+                                aborted = true;
+                                return FileVisitResult.TERMINATE;
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return FileVisitResult.TERMINATE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    failedFiles.incrementAndGet();
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        /**
+         * Ставит задачу в очередь, пока жив хотя бы один рабочий поток
+         * @return false, если все рабочие потоки завершились и задачу некому взять
+         */
+        boolean enqueue(SliceJob job) throws InterruptedException {
+            while (!queue.offer(job, 100, TimeUnit.MILLISECONDS)) {
+                if (liveWorkers.get() == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void workerLoop() {
+            try {
+                List<Row> batch = new ArrayList<>(batchSize);
+                List<Directory> batchSlices = new ArrayList<>();
+                while (true) {
+                    SliceJob job;
+                    try {
+                        job = queue.take();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (job == END) {
+                        flush(batch, batchSlices);
+                        return;
+                    }
+                    try {
+                        process(job, batch, batchSlices);
+                    } catch (RuntimeException e) {
+                        // Непредвиденная ошибка не останавливает поток - директория будет обработана повторно
+                        failedDirectories.add(job.directory().path);
+                        failedFiles.incrementAndGet();
+                    }
+                }
+            } finally {
+                liveWorkers.decrementAndGet();
+            }
+        }
+
+        private void process(SliceJob job, List<Row> batch, List<Directory> batchSlices) {
+            for (Path file : job.files()) {
+                Row row = toRow(file);
+                filesScanned.incrementAndGet();
+                if (row == null) {
+                    failedFiles.incrementAndGet();
+                    continue;
+                }
+                batch.add(row);
+                if (batch.size() >= batchSize) {
+                    flush(batch, batchSlices);
+                }
+            }
+            // Часть завершена, когда записан пакет с ее последней строкой
+            batchSlices.add(job.directory());
+            if (batch.isEmpty()) {
+                flush(batch, batchSlices);
+            }
+        }
+
+        private Row toRow(Path file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                HashPolicy.Mode mode = hashPolicy.modeFor(file, OperationType.CREATE);
+                String checksum = null;
+                Long crc32c = null;
+                if (mode == HashPolicy.Mode.CRC_ONLY) {
+                    crc32c = contentHasher.crc32c(file);
+                } else {
+                    checksum = checksumCache.get(file, attributes);
+                    if (checksum == null) {
+                        checksum = contentHasher.hashFile(file).checksum();
+                        checksumCache.put(file, attributes, checksum);
+                    }
+                }
+                bytesHashed.addAndGet(attributes.size());
+                String filename = file.getFileName().toString();
+                return new Row(filename, Timestamp.valueOf(LocalDateTime.now()), attributes.size(),
+                    file.toString(), FileNameUtils.getExtension(filename), checksum, crc32c);
+            } catch (IOException e) {
+                // Файл удален или недоступен во время индексации
+                return null;
+            }
+        }
+
+        private void flush(List<Row> batch, List<Directory> batchSlices) {
+            if (!batch.isEmpty()) {
+                try {
+                    int[][] counts = transactionTemplate.execute(status ->
+                        jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (statement, row) -> {
+                            statement.setString(1, row.filename());
+                            statement.setTimestamp(2, row.createdAt());
+                            statement.setLong(3, row.size());
+                            statement.setString(4, row.location());
+                            statement.setLong(5, ownerId);
+                            statement.setString(6, row.fileType());
+                            statement.setString(7, row.checksum());
+                            statement.setObject(8, row.crc32c(), Types.BIGINT);
+                        }));
+                    long inserted = 0;
+                    for (int[] chunk : counts) {
+                        for (int count : chunk) {
+                            // Драйвер может вернуть SUCCESS_NO_INFO (-2) для переписанных пакетов
+                            inserted += count > 0 ? count : 0;
+                        }
+                    }
+                    filesIndexed.addAndGet(inserted);
+                    filesSkipped.addAndGet(batch.size() - inserted);
+                } catch (RuntimeException e) {
+                    // Директории пакета не отмечаются - при возобновлении будут обработаны снова.
+                    // Строки директории могли попасть и в более ранние пакеты, поэтому она
+                    // запоминается, чтобы ее не отметил следующий успешный пакет
+                    failedBatches.incrementAndGet();
+                    failedFiles.addAndGet(batch.size());
+                    for (Row row : batch) {
+                        failedDirectories.add(Paths.get(row.location()).getParent());
+                    }
+                    batch.clear();
+                    batchSlices.clear();
+                    return;
+                }
+                batch.clear();
+            }
+            markCompleted(batchSlices);
+            batchSlices.clear();
+        }
+
+        /**
+         * Отмечает директории, у которых записаны строки всех частей
+         */
+        private void markCompleted(List<Directory> batchSlices) {
+            List<Path> directories = batchSlices.stream()
+                .filter(directory -> directory.pendingSlices.decrementAndGet() == 0)
+                .map(directory -> directory.path)
+                .filter(directory -> !failedDirectories.contains(directory))
+                .toList();
+            if (directories.isEmpty()) {
+                return;
+            }
+            synchronized (this) {
+                try {
+                    for (Path directory : directories) {
+                        checkpoint.write(directory.toString());
+                        checkpoint.newLine();
+                    }
+                    checkpoint.flush();
+                } catch (IOException e) {
+                    // Контрольная точка не записана - директории будут проиндексированы повторно без дублей
+                }
+            }
+            directoriesDone.addAndGet(directories.size());
+        }
+
+        IndexProgress snapshot(boolean finished) {
+            return new IndexProgress(filesScanned.get(), filesIndexed.get(), filesSkipped.get(),
+                failedFiles.get(), directoriesDone.get(), directoriesSkipped.get(), bytesHashed.get(),
+                Duration.ofNanos(System.nanoTime() - startNanos), finished);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Кэш контрольных сумм с ключом (путь, размер, время изменения, fileKey).
+ * Пока атрибуты файла не изменились, повторная проверка стоит одного вызова stat
+ * вместо полного чтения файла. Вытеснение - LRU, содержимое сохраняется в
+ * локальный файл при остановке и загружается при запуске.
+ */
+@Component
+public class ChecksumCache {
+
+    private static final int FILE_MAGIC = 0x43534331; // "CSC1"
+
+    @Value("${filemanager.checksum.cache.capacity:100000}")
+    private int capacity;
+
+    @Value("${filemanager.checksum.cache.file:./checksum-cache.dat}")
+    private String cacheFile;
+
+    private Map<String, CachedChecksum> entries;
+
+    // Кэш вызывается из операций на виртуальных потоках - монитор закрепил бы поток-носитель
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @PostConstruct
+    public void load() {
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedChecksum> eldest) {
+                return size() > capacity;
+            }
+        };
+
+        Path path = getCacheFile();
+        if (!Files.isRegularFile(path)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != FILE_MAGIC) {
+                return;
+            }
+            int count = in.readInt();
+            // Записи читаются с диска вне блокировки и добавляются одним шагом
+            Map<String, CachedChecksum> loaded = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                loaded.put(key, new CachedChecksum(in.readLong(), in.readLong(), in.readUTF(), in.readUTF()));
+            }
+            lock.lock();
+            try {
+                entries.putAll(loaded);
+            } finally {
+                lock.unlock();
+            }
+        } catch (IOException e) {
+            // Поврежденный кэш не критичен - суммы будут пересчитаны
+        }
+    }
+
+    @PreDestroy
+    public void save() {
+        List<Map.Entry<String, CachedChecksum>> snapshot;
+        lock.lock();
+        try {
+            snapshot = new ArrayList<>(entries.entrySet());
+        } finally {
+            lock.unlock();
+        }
+        Path path = getCacheFile();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(snapshot.size());
+                // Порядок LRU сохраняется: при загрузке самые свежие записи окажутся в конце
+                for (Map.Entry<String, CachedChecksum> e : snapshot) {
+                    out.writeUTF(e.getKey());
+                    out.writeLong(e.getValue().size());
+                    out.writeLong(e.getValue().modifiedNanos());
+                    out.writeUTF(e.getValue().fileKey());
+                    out.writeUTF(e.getValue().checksum());
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ignored) {
+            // Кэш не сохранится, при следующем запуске суммы будут пересчитаны
+        }
+    }
+
+    /**
+     * @return закэшированная контрольная сумма или null, если файл изменился
+     */
+    public String get(Path path, BasicFileAttributes attributes) {
+        CachedChecksum cached;
+        lock.lock();
+        try {
+            cached = entries.get(key(path));
+        } finally {
+            lock.unlock();
+        }
+        if (cached == null || !cached.matches(attributes)) {
+            return null;
+        }
+        return cached.checksum();
+    }
+
+    public void put(Path path, BasicFileAttributes attributes, String checksum) {
+        if (checksum == null) {
+            return;
+        }
+        CachedChecksum cached = new CachedChecksum(attributes.size(), modifiedNanos(attributes),
+            fileKey(attributes), checksum);
+        lock.lock();
+        try {
+            entries.put(key(path), cached);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(Path path) {
+        lock.lock();
+        try {
+            entries.remove(key(path));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Path getCacheFile() {
+        return Paths.get(cacheFile).toAbsolutePath().normalize();
+    }
+
+    private static String key(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    private static long modifiedNanos(BasicFileAttributes attributes) {
+        return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    private static String fileKey(BasicFileAttributes attributes) {
+        Object fileKey = attributes.fileKey();
+        return fileKey != null ? fileKey.toString() : "";
+    }
+
+    private record CachedChecksum(long size, long modifiedNanos, String fileKey, String checksum) {
+
+        boolean matches(BasicFileAttributes attributes) {
+            return size == attributes.size()
+                && modifiedNanos == ChecksumCache.modifiedNanos(attributes)
+                && fileKey.equals(ChecksumCache.fileKey(attributes));
+        }
+    }
+}
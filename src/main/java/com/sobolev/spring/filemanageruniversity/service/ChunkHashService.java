@@ -0,0 +1,84 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.entity.FileChunkHash;
+import com.sobolev.spring.filemanageruniversity.entity.FileEntity;
+import com.sobolev.spring.filemanageruniversity.repository.FileChunkHashRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Хранение хешей блоков файлов (file_chunk_hash)
+ */
+@Service
+public class ChunkHashService {
+
+    private final FileChunkHashRepository chunkHashRepository;
+
+    @Autowired
+    public ChunkHashService(FileChunkHashRepository chunkHashRepository) {
+        this.chunkHashRepository = chunkHashRepository;
+    }
+
+    public List<String> findHashes(FileEntity fileEntity) {
+        if (fileEntity.getChunkSize() == null) {
+            return List.of();
+        }
+        return chunkHashRepository.findByFileOrderByChunkIndex(fileEntity).stream()
+            .map(FileChunkHash::getHash)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Заменяет сохраненные хеши блоков файла на вычисленные.
+     * Если для нового содержимого хешей блоков нет, старые удаляются как неактуальные.
+     */
+    @Transactional
+    public void store(FileEntity fileEntity, ContentHash contentHash) {
+        if (!contentHash.isTree()) {
+            if (fileEntity.getChunkSize() != null) {
+                chunkHashRepository.deleteByFile(fileEntity);
+                fileEntity.setChunkSize(null);
+            }
+            return;
+        }
+        if (fileEntity.getChunkSize() != null) {
+            chunkHashRepository.deleteByFile(fileEntity);
+        }
+        List<FileChunkHash> chunks = new ArrayList<>(contentHash.chunkHashes().size());
+        for (int i = 0; i < contentHash.chunkHashes().size(); i++) {
+            chunks.add(new FileChunkHash(fileEntity, i, contentHash.chunkHashes().get(i)));
+        }
+        chunkHashRepository.saveAll(chunks);
+        fileEntity.setChunkSize(contentHash.chunkSize());
+    }
+
+    /**
+     * Заменяет хеши блоков начиная с fromIndex после частичной записи.
+     * Остальные блоки не изменились и не перезаписываются.
+     */
+    @Transactional
+    public void replaceRange(FileEntity fileEntity, int fromIndex, List<String> hashes) {
+        chunkHashRepository.deleteByFileAndIndexRange(fileEntity, fromIndex, fromIndex + hashes.size());
+        List<FileChunkHash> chunks = new ArrayList<>(hashes.size());
+        for (int i = 0; i < hashes.size(); i++) {
+            chunks.add(new FileChunkHash(fileEntity, fromIndex + i, hashes.get(i)));
+        }
+        chunkHashRepository.saveAll(chunks);
+    }
+
+    /**
+     * Переносит хеши блоков исходного файла на копию без повторного хеширования
+     */
+    @Transactional
+    public void copy(FileEntity source, FileEntity dest) {
+        List<String> hashes = findHashes(source);
+        store(dest, hashes.isEmpty()
+            ? ContentHash.flat(source.getChecksum())
+            : new ContentHash(source.getChecksum(), source.getChunkSize(), hashes));
+    }
+}
@@ -0,0 +1,105 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.util.ChecksumUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Потоковое вычисление ContentHash за один проход по данным.
+ * Итоговый размер заранее неизвестен, поэтому до порога дерева считается только
+ * плоский SHA-256. При пересечении порога плоский хеш отбрасывается, а хеши блоков
+ * для уже записанного начала файла вычисляются повторным чтением из канала записи:
+ * файлы меньше порога (их подавляющее большинство) хешируются ровно один раз.
+ */
+final class ContentDigest {
+
+    // Размер буфера повторного чтения записанного начала файла
+    private static final int REREAD_BUFFER_SIZE = 64 * 1024;
+
+    private final int chunkSize;
+    private final long treeThreshold;
+    private final FileChannel written;
+    private final List<String> chunkHashes = new ArrayList<>();
+
+    private MessageDigest flat = ChecksumUtils.newDigest();
+    private MessageDigest leaf;
+    private int leafLength;
+    private long total;
+
+    /**
+     * @param written канал, в который записываются переданные данные; к вызову update
+     *                в нем должны находиться все ранее переданные байты
+     */
+    ContentDigest(int chunkSize, long treeThreshold, FileChannel written) {
+        this.chunkSize = chunkSize;
+        this.treeThreshold = treeThreshold;
+        this.written = written;
+    }
+
+    void update(byte[] data, int offset, int length) throws IOException {
+        if (flat != null) {
+            if (total + length < treeThreshold) {
+                flat.update(data, offset, length);
+                total += length;
+                return;
+            }
+            // Файл гарантированно попадает под дерево - плоский хеш больше не нужен
+            flat = null;
+            hashWrittenPrefix();
+        }
+        total += length;
+        updateLeaves(data, offset, length);
+    }
+
+    long size() {
+        return total;
+    }
+
+    ContentHash finish() {
+        if (flat != null) {
+            return ContentHash.flat(ChecksumUtils.toHex(flat.digest()));
+        }
+        if (leaf != null) {
+            chunkHashes.add(ChecksumUtils.toHex(leaf.digest()));
+            leaf = null;
+        }
+        return new ContentHash(ContentHasher.merkleRoot(chunkHashes), chunkSize, List.copyOf(chunkHashes));
+    }
+
+    private void hashWrittenPrefix() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(REREAD_BUFFER_SIZE, Math.max(1, total)));
+        long position = 0;
+        while (position < total) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), total - position));
+            int n = written.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("Записанное начало файла короче переданных данных");
+            }
+            updateLeaves(buffer.array(), 0, n);
+            position += n;
+        }
+    }
+
+    private void updateLeaves(byte[] data, int offset, int length) {
+        while (length > 0) {
+            if (leaf == null) {
+                leaf = ContentHasher.newLeafDigest();
+                leafLength = 0;
+            }
+            int take = Math.min(length, chunkSize - leafLength);
+            leaf.update(data, offset, take);
+            leafLength += take;
+            offset += take;
+            length -= take;
+            if (leafLength == chunkSize) {
+                chunkHashes.add(ChecksumUtils.toHex(leaf.digest()));
+                leaf = null;
+            }
+        }
+    }
+}
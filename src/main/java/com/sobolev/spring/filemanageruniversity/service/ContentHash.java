@@ -0,0 +1,20 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import java.util.List;
+
+/**
+ * Результат хеширования содержимого файла.
+ * Для небольших файлов checksum - обычный SHA-256, chunkSize равен null,
+ * а список хешей блоков пуст. Для больших файлов checksum - корень дерева Меркла
+ * над хешами блоков размера chunkSize.
+ */
+public record ContentHash(String checksum, Integer chunkSize, List<String> chunkHashes) {
+
+    public static ContentHash flat(String checksum) {
+        return new ContentHash(checksum, null, List.of());
+    }
+
+    public boolean isTree() {
+        return chunkSize != null && !chunkHashes.isEmpty();
+    }
+}
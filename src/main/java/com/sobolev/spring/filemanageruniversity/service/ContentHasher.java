@@ -0,0 +1,272 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.config.FileManagerConstants;
+import com.sobolev.spring.filemanageruniversity.exception.ValidationException;
+import com.sobolev.spring.filemanageruniversity.util.ChecksumUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.CRC32C;
+
+/**
+ * Хеширование содержимого файлов.
+ * Небольшие файлы хешируются последовательно обычным SHA-256. Файлы от порога
+ * filemanager.hash.tree.threshold делятся на блоки фиксированного размера, блоки
+ * хешируются параллельно в ForkJoinPool, а их хеши сворачиваются в корень дерева Меркла.
+ * Хеши блоков позволяют перепроверять и обнаруживать изменения поблочно.
+ */
+@Component
+public class ContentHasher {
+
+    // Префиксы разделяют хеши листьев и внутренних узлов дерева
+    private static final byte LEAF_PREFIX = 0x00;
+    private static final byte NODE_PREFIX = 0x01;
+
+    // Размер буфера чтения внутри одного блока
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    @Value("${filemanager.hash.chunk.size:4194304}")
+    private int chunkSize; // 4MB по умолчанию
+
+    @Value("${filemanager.hash.tree.threshold:67108864}")
+    private long treeThreshold; // Файлы от 64MB хешируются деревом
+
+    @Value("${filemanager.hash.parallelism:0}")
+    private int parallelism; // 0 - по числу процессоров
+
+    private ForkJoinPool pool;
+
+    @PostConstruct
+    public void init() {
+        if (chunkSize < FileManagerConstants.BUFFER_SIZE) {
+            throw new ValidationException("Размер блока хеширования должен быть не меньше "
+                + FileManagerConstants.BUFFER_SIZE + " байт");
+        }
+        if (treeThreshold < chunkSize) {
+            throw new ValidationException("Порог хеширования деревом не может быть меньше размера блока");
+        }
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(threads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return true, если файл такого размера хешируется деревом блоков
+     */
+    public boolean isTreeSized(long size) {
+        return size >= treeThreshold;
+    }
+
+    /**
+     * Создает потоковый вычислитель хеша для записи файла за один проход
+     * @param written канал записываемого файла, открытый на чтение
+     */
+    ContentDigest newDigest(FileChannel written) {
+        return new ContentDigest(chunkSize, treeThreshold, written);
+    }
+
+    /**
+     * Вычисляет хеш файла, для больших файлов - параллельно по блокам
+     */
+    public ContentHash hashFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < treeThreshold) {
+                MessageDigest md = ChecksumUtils.newDigest();
+                readRange(channel, 0, size, md);
+                return ContentHash.flat(ChecksumUtils.toHex(md.digest()));
+            }
+            List<String> chunkHashes = hashChunks(channel, size, 0, chunkCount(size));
+            return new ContentHash(merkleRoot(chunkHashes), chunkSize, chunkHashes);
+        }
+    }
+
+    /**
+     * Хеширует диапазон блоков [fromChunk, toChunk) файла параллельно.
+     * Используется для частичной перепроверки и пересчета после частичной записи.
+     */
+    public List<String> hashChunks(Path file, int fromChunk, int toChunk) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return hashChunks(channel, channel.size(), fromChunk, toChunk);
+        }
+    }
+
+    /**
+     * Сравнивает блоки файла с сохраненными хешами.
+     * @return индексы изменившихся блоков (включая появившиеся и исчезнувшие)
+     */
+    public List<Integer> findChangedChunks(Path file, List<String> expectedHashes) throws IOException {
+        List<Integer> changed = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int actualCount = chunkCount(size);
+            List<String> actual = hashChunks(channel, size, 0, actualCount);
+            int max = Math.max(actualCount, expectedHashes.size());
+            for (int i = 0; i < max; i++) {
+                if (i >= actualCount || i >= expectedHashes.size()
+                        || !actual.get(i).equals(expectedHashes.get(i))) {
+                    changed.add(i);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Вычисляет CRC32C файла (аппаратно ускоряется на современных процессорах)
+     */
+    public long crc32c(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    public int chunkCount(long size) {
+        return (int) ((size + chunkSize - 1) / chunkSize);
+    }
+
+    static MessageDigest newLeafDigest() {
+        MessageDigest md = ChecksumUtils.newDigest();
+        md.update(LEAF_PREFIX);
+        return md;
+    }
+
+    /**
+     * Сворачивает хеши блоков в корень дерева Меркла.
+     * Узел без пары переносится на следующий уровень без изменений.
+     */
+    static String merkleRoot(List<String> chunkHashes) {
+        if (chunkHashes.isEmpty()) {
+            return ChecksumUtils.toHex(newLeafDigest().digest());
+        }
+        List<byte[]> level = new ArrayList<>(chunkHashes.size());
+        for (String hash : chunkHashes) {
+            level.add(ChecksumUtils.fromHex(hash));
+        }
+        while (level.size() > 1) {
+            List<byte[]> next = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; i < level.size(); i += 2) {
+                if (i + 1 == level.size()) {
+                    next.add(level.get(i));
+                    continue;
+                }
+                MessageDigest md = ChecksumUtils.newDigest();
+                md.update(NODE_PREFIX);
+                md.update(level.get(i));
+                md.update(level.get(i + 1));
+                next.add(md.digest());
+            }
+            level = next;
+        }
+        return ChecksumUtils.toHex(level.get(0));
+    }
+
+    private List<String> hashChunks(FileChannel channel, long size, int fromChunk, int toChunk) throws IOException {
+        int count = Math.max(0, Math.min(toChunk, chunkCount(size)) - fromChunk);
+        String[] hashes = new String[count];
+        try {
+            pool.invoke(new ChunkHashTask(channel, size, fromChunk, hashes, 0, count));
+        } catch (RuntimeException e) {
+            // ForkJoinPool может пробросить копию исключения - ищем исходную ошибку ввода-вывода
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException ioException) {
+                    throw ioException;
+                }
+            }
+            throw e;
+        }
+        return Arrays.asList(hashes);
+    }
+
+    private static void readRange(FileChannel channel, long position, long length, MessageDigest md) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_BUFFER_SIZE, Math.max(1, length)));
+        long end = position + length;
+        while (position < end) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                break;
+            }
+            buffer.flip();
+            md.update(buffer);
+            position += n;
+        }
+    }
+
+    /**
+     * Задача ForkJoin: делит диапазон блоков пополам до одного блока.
+     * FileChannel допускает параллельное позиционное чтение.
+     */
+    private final class ChunkHashTask extends RecursiveAction {
+
+        private final FileChannel channel;
+        private final long size;
+        private final int firstChunk;
+        private final String[] hashes;
+        private final int from;
+        private final int to;
+
+        ChunkHashTask(FileChannel channel, long size, int firstChunk, String[] hashes, int from, int to) {
+            this.channel = channel;
+            this.size = size;
+            this.firstChunk = firstChunk;
+            this.hashes = hashes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (to > from) {
+                    hashes[from] = hashChunk(firstChunk + from);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ChunkHashTask(channel, size, firstChunk, hashes, from, middle),
+                      new ChunkHashTask(channel, size, firstChunk, hashes, middle, to));
+        }
+
+        private String hashChunk(int index) {
+            long start = (long) index * chunkSize;
+            long length = Math.min(chunkSize, size - start);
+            MessageDigest md = newLeafDigest();
+            try {
+                readRange(channel, start, length, md);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return ChecksumUtils.toHex(md.digest());
+        }
+    }
+}
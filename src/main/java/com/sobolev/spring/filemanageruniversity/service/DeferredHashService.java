@@ -0,0 +1,191 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.entity.FileEntity;
+import com.sobolev.spring.filemanageruniversity.repository.FileRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фоновое вычисление SHA-256 для файлов, у которых оно отложено политикой хеширования,
+ * и CRC32C для файлов, у которых после частичной записи его нельзя было получить
+ * из прежнего значения. Задача ставится в очередь после фиксации транзакции,
+ * чтобы запись file_entity была видна фоновому потоку.
+ */
+@Service
+public class DeferredHashService {
+
+    private final FileRepository fileRepository;
+    private final ContentHasher contentHasher;
+    private final ChunkHashService chunkHashService;
+    private final ChecksumCache checksumCache;
+    private final BlobStoreService blobStoreService;
+    private final TransactionTemplate transactionTemplate;
+    private final FileMetadataCache metadataCache;
+    private final FileLockManager fileLockManager;
+
+    private ExecutorService executor;
+
+    @Autowired
+    public DeferredHashService(FileRepository fileRepository, ContentHasher contentHasher,
+                               ChunkHashService chunkHashService, ChecksumCache checksumCache,
+                               BlobStoreService blobStoreService, TransactionTemplate transactionTemplate,
+                               FileMetadataCache metadataCache, FileLockManager fileLockManager) {
+        this.fileRepository = fileRepository;
+        this.contentHasher = contentHasher;
+        this.chunkHashService = chunkHashService;
+        this.checksumCache = checksumCache;
+        this.blobStoreService = blobStoreService;
+        this.transactionTemplate = transactionTemplate;
+        this.metadataCache = metadataCache;
+        this.fileLockManager = fileLockManager;
+    }
+
+    @PostConstruct
+    public void start() {
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "deferred-hash");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Планирует вычисление контрольной суммы файла
+     */
+    public void schedule(FileEntity fileEntity) {
+        Long fileId = fileEntity.getId();
+        Path path = Paths.get(fileEntity.getLocation());
+        submitAfterCommit(() -> computeAndStore(fileId, path));
+    }
+
+    /**
+     * Планирует вычисление только CRC32C: контрольная сумма файла актуальна,
+     * а CRC32C после записи по смещению неизвестен
+     */
+    public void scheduleCrc(FileEntity fileEntity) {
+        Long fileId = fileEntity.getId();
+        Path path = Paths.get(fileEntity.getLocation());
+        submitAfterCommit(() -> computeAndStoreCrc(fileId, path));
+    }
+
+    private void submitAfterCommit(Runnable task) {
+        Runnable submit = () -> executor.execute(task);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit.run();
+                }
+            });
+        } else {
+            submit.run();
+        }
+    }
+
+    private void computeAndStore(Long fileId, Path path) {
+        try {
+            BasicFileAttributes before = Files.readAttributes(path, BasicFileAttributes.class);
+            ContentHash contentHash = contentHasher.hashFile(path);
+            long crc = contentHasher.crc32c(path);
+            BasicFileAttributes after = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!unchanged(before, after)) {
+                // Файл изменился во время хеширования - новая запись запланирует пересчет сама
+                return;
+            }
+
+            // Запись держит блокировку до сохранения метаданных, поэтому под блокировкой
+            // неизменные атрибуты означают, что результат соответствует строке в БД.
+            // Сохранение и замена ссылкой на blob выполняются под той же блокировкой
+            try (FileLockManager.Handle lock = fileLockManager.lockWrite(path)) {
+                BasicFileAttributes current = Files.readAttributes(path, BasicFileAttributes.class);
+                if (!unchanged(after, current)) {
+                    return;
+                }
+                Boolean stored = transactionTemplate.execute(status -> {
+                    FileEntity fileEntity = fileRepository.findById(fileId).orElse(null);
+                    if (fileEntity == null || !path.toString().equals(fileEntity.getLocation())
+                            || fileEntity.getSize() == null || fileEntity.getSize() != current.size()) {
+                        return false;
+                    }
+                    // CRC32C из последней записи не совпадает - результат устарел
+                    if (fileEntity.getCrc32c() != null && fileEntity.getCrc32c() != crc) {
+                        return false;
+                    }
+                    fileEntity.setChecksum(contentHash.checksum());
+                    fileEntity.setCrc32c(crc);
+                    chunkHashService.store(fileEntity, contentHash);
+                    fileRepository.save(fileEntity);
+                    return true;
+                });
+
+                if (Boolean.TRUE.equals(stored)) {
+                    // Закэшированный экземпляр не содержит новую контрольную сумму
+                    metadataCache.evict(path.toString());
+                    checksumCache.put(path, current, contentHash.checksum());
+                    blobStoreService.adopt(path, contentHash.checksum());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Файл мог быть удален или перемещен - контрольная сумма будет вычислена при следующем обращении
+        }
+    }
+
+    private void computeAndStoreCrc(Long fileId, Path path) {
+        try {
+            BasicFileAttributes before = Files.readAttributes(path, BasicFileAttributes.class);
+            long crc = contentHasher.crc32c(path);
+            // Запись держит блокировку до сохранения метаданных, поэтому под блокировкой
+            // неизменные атрибуты означают, что CRC32C соответствует записанному в БД размеру
+            try (FileLockManager.Handle lock = fileLockManager.lockWrite(path)) {
+                BasicFileAttributes current = Files.readAttributes(path, BasicFileAttributes.class);
+                if (!unchanged(before, current)) {
+                    return;
+                }
+                Boolean stored = transactionTemplate.execute(status -> {
+                    FileEntity fileEntity = fileRepository.findById(fileId).orElse(null);
+                    if (fileEntity == null || !path.toString().equals(fileEntity.getLocation())
+                            || fileEntity.getCrc32c() != null || fileEntity.getSize() == null
+                            || fileEntity.getSize() != current.size()) {
+                        return false;
+                    }
+                    fileEntity.setCrc32c(crc);
+                    fileRepository.save(fileEntity);
+                    return true;
+                });
+                if (Boolean.TRUE.equals(stored)) {
+                    metadataCache.evict(path.toString());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Файл мог быть удален или перемещен - CRC32C будет вычислен при следующей записи
+        }
+    }
+
+    private static boolean unchanged(BasicFileAttributes expected, BasicFileAttributes current) {
+        return current.size() == expected.size()
+            && current.lastModifiedTime().equals(expected.lastModifiedTime())
+            && Objects.equals(current.fileKey(), expected.fileKey());
+    }
+}
@@ -0,0 +1,123 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.dto.DirectoryEntry;
+import com.sobolev.spring.filemanageruniversity.dto.DirectoryPage;
+import com.sobolev.spring.filemanageruniversity.dto.FileSort;
+import com.sobolev.spring.filemanageruniversity.entity.OperationType;
+import com.sobolev.spring.filemanageruniversity.entity.User;
+import com.sobolev.spring.filemanageruniversity.exception.FileNotFoundException;
+import com.sobolev.spring.filemanageruniversity.exception.ValidationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Листинг больших директорий.
+ * Атрибуты читаются в том же проходе, что и имена (walkFileTree с глубиной 1).
+ * Каждая страница - отдельный проход, в котором ограниченная куча хранит только
+ * pageSize + 1 лучших элементов после курсора, поэтому память не зависит от
+ * размера директории. Порядок детерминирован: при равенстве ключа сравниваются имена.
+ */
+@Service
+public class DirectoryListingService {
+
+    private static final int MAX_PAGE_SIZE = 10000;
+
+    private final SecurityService securityService;
+    private final AuditService auditService;
+
+    @Autowired
+    public DirectoryListingService(SecurityService securityService, AuditService auditService) {
+        this.securityService = securityService;
+        this.auditService = auditService;
+    }
+
+    /**
+     * @param glob шаблон имени (например *.txt); null или пустая строка - все элементы
+     * @param after курсор предыдущей страницы; null - первая страница
+     */
+    public DirectoryPage listDirectory(String directoryPath, String glob, FileSort sort,
+                                       DirectoryEntry after, int pageSize, User user) throws IOException {
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        Path validatedPath = securityService.validateAndNormalizePath(directoryPath);
+        if (!Files.exists(validatedPath)) {
+            throw new FileNotFoundException("Директория не найдена: " + directoryPath);
+        }
+        if (!Files.isDirectory(validatedPath)) {
+            throw new ValidationException("Указанный путь не является директорией: " + directoryPath);
+        }
+
+        PathMatcher matcher = glob == null || glob.isBlank()
+            ? null : FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        Comparator<DirectoryEntry> order = comparator(sort);
+
+        // Максимальная куча: в вершине худший из отобранных элементов
+        int limit = pageSize + 1;
+        PriorityQueue<DirectoryEntry> best = new PriorityQueue<>(limit + 1, order.reversed());
+        Files.walkFileTree(validatedPath, EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                Path name = file.getFileName();
+                if (matcher != null && !matcher.matches(name)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                DirectoryEntry entry = new DirectoryEntry(name.toString(), attributes.size(),
+                    attributes.lastModifiedTime().toInstant(), attributes.isDirectory());
+                if (after != null && order.compare(entry, after) <= 0) {
+                    return FileVisitResult.CONTINUE;
+                }
+                if (best.size() < limit) {
+                    best.add(entry);
+                } else if (order.compare(entry, best.peek()) < 0) {
+                    best.poll();
+                    best.add(entry);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // Элемент удален или недоступен во время обхода - пропускаем
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        List<DirectoryEntry> entries = new ArrayList<>(best);
+        entries.sort(order);
+        DirectoryEntry next = null;
+        if (entries.size() > pageSize) {
+            entries = entries.subList(0, pageSize);
+            next = entries.get(pageSize - 1);
+        }
+
+        if (after == null) {
+            auditService.logOperation(user, OperationType.READ, null, "Просмотр директории: " + directoryPath);
+        }
+        return new DirectoryPage(List.copyOf(entries), next);
+    }
+
+    private static Comparator<DirectoryEntry> comparator(FileSort sort) {
+        Comparator<DirectoryEntry> byName = Comparator.comparing(DirectoryEntry::name);
+        return switch (sort) {
+            case NAME -> byName;
+            case SIZE -> Comparator.comparingLong(DirectoryEntry::size).reversed().thenComparing(byName);
+            case DATE -> Comparator.comparing(DirectoryEntry::lastModified).reversed().thenComparing(byName);
+        };
+    }
+}
@@ -0,0 +1,264 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.dto.DirectoryEntry;
+import com.sobolev.spring.filemanageruniversity.dto.DirectoryStats;
+import com.sobolev.spring.filemanageruniversity.entity.OperationType;
+import com.sobolev.spring.filemanageruniversity.entity.User;
+import com.sobolev.spring.filemanageruniversity.exception.FileNotFoundException;
+import com.sobolev.spring.filemanageruniversity.exception.ValidationException;
+import com.sobolev.spring.filemanageruniversity.util.FileNameUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Рекурсивная статистика директории (аналог du).
+ * Дерево обходится параллельно в ForkJoinPool: задача на каждую поддиректорию.
+ * Счетчики общие для всех задач (LongAdder), поэтому слияние результатов не нужно.
+ * Обход прекращается по флагу отмены или по истечении бюджета времени,
+ * результат в этом случае помечается как неполный.
+ * Символические ссылки не разыменовываются. Файл с несколькими жесткими
+ * ссылками (в том числе ссылками на blob при дедупликации) учитывается один раз.
+ */
+@Service
+public class DirectoryStatsService {
+
+    private static final Comparator<DirectoryEntry> BY_SIZE = Comparator.comparingLong(DirectoryEntry::size);
+
+    private final SecurityService securityService;
+    private final AuditService auditService;
+
+    @Value("${filemanager.stats.parallelism:0}")
+    private int parallelism; // 0 - по числу процессоров
+
+    @Value("${filemanager.stats.timeout.ms:60000}")
+    private long defaultTimeoutMs;
+
+    @Value("${filemanager.stats.largest.files:10}")
+    private int largestFilesLimit;
+
+    private ForkJoinPool pool;
+
+    @Autowired
+    public DirectoryStatsService(SecurityService securityService, AuditService auditService) {
+        this.securityService = securityService;
+        this.auditService = auditService;
+    }
+
+    @PostConstruct
+    public void init() {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(threads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public DirectoryStats computeStats(String directoryPath, User user) throws IOException {
+        return computeStats(directoryPath, Duration.ofMillis(defaultTimeoutMs), new AtomicBoolean(), user);
+    }
+
+    /**
+     * @param budget максимальное время обхода
+     * @param cancelled флаг отмены; может быть выставлен из другого потока
+     */
+    public DirectoryStats computeStats(String directoryPath, Duration budget, AtomicBoolean cancelled,
+                                       User user) throws IOException {
+        Path root = securityService.validateAndNormalizePath(directoryPath);
+        if (!Files.exists(root)) {
+            throw new FileNotFoundException("Директория не найдена: " + directoryPath);
+        }
+        if (!Files.isDirectory(root)) {
+            throw new ValidationException("Указанный путь не является директорией: " + directoryPath);
+        }
+
+        long start = System.nanoTime();
+        Walk walk = new Walk(root, start + budget.toNanos(), cancelled);
+        pool.invoke(walk.new DirectoryTask(root));
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        auditService.logOperation(user, OperationType.READ, null, "Статистика директории: " + directoryPath
+            + (walk.stopped ? " (прервано)" : ""));
+        return walk.toStats(directoryPath, elapsed);
+    }
+
+    /**
+     * Общее состояние одного обхода
+     */
+    private final class Walk {
+
+        private final Path root;
+        private final long deadline;
+        private final AtomicBoolean cancelled;
+
+        private final LongAdder totalBytes = new LongAdder();
+        private final LongAdder fileCount = new LongAdder();
+        private final LongAdder directoryCount = new LongAdder();
+        private final LongAdder inaccessibleCount = new LongAdder();
+        private final Map<String, LongAdder[]> byExtension = new ConcurrentHashMap<>();
+
+        // fileKey файлов с несколькими жесткими ссылками, уже учтенных обходом
+        private final Set<Object> linkedFiles = ConcurrentHashMap.newKeySet();
+        private final boolean unixView;
+
+        // Минимальная куча самых больших файлов; порог читается без блокировки
+        private final PriorityQueue<DirectoryEntry> largest = new PriorityQueue<>(BY_SIZE);
+        private volatile long largestThreshold = -1;
+
+        private volatile boolean stopped;
+
+        Walk(Path root, long deadline, AtomicBoolean cancelled) {
+            this.root = root;
+            this.deadline = deadline;
+            this.cancelled = cancelled;
+            this.unixView = root.getFileSystem().supportedFileAttributeViews().contains("unix");
+        }
+
+        boolean shouldStop() {
+            if (!stopped && (cancelled.get() || System.nanoTime() - deadline > 0)) {
+                stopped = true;
+            }
+            return stopped;
+        }
+
+        void addFile(Path file, BasicFileAttributes attributes) {
+            if (isRepeatedLink(file, attributes)) {
+                return;
+            }
+            long size = attributes.size();
+            totalBytes.add(size);
+            fileCount.increment();
+            String extension = FileNameUtils.getExtension(file.getFileName().toString()).toLowerCase();
+            LongAdder[] counters = byExtension.computeIfAbsent(extension, key -> new LongAdder[] {
+                new LongAdder(), new LongAdder()});
+            counters[0].increment();
+            counters[1].add(size);
+            if (largestFilesLimit > 0 && size > largestThreshold) {
+                offerLargest(new DirectoryEntry(root.relativize(file).toString(), size,
+                    attributes.lastModifiedTime().toInstant(), false));
+            }
+        }
+
+        /**
+         * Число ссылок читается отдельным запросом атрибутов, поэтому fileKey
+         * запоминаются только для файлов, у которых ссылок больше одной
+         */
+        private boolean isRepeatedLink(Path file, BasicFileAttributes attributes) {
+            Object fileKey = attributes.fileKey();
+            if (!unixView || fileKey == null) {
+                return false;
+            }
+            try {
+                Object links = Files.getAttribute(file, "unix:nlink", LinkOption.NOFOLLOW_LINKS);
+                return links instanceof Integer count && count > 1 && !linkedFiles.add(fileKey);
+            } catch (IOException | UnsupportedOperationException e) {
+                return false;
+            }
+        }
+
+        private synchronized void offerLargest(DirectoryEntry entry) {
+            if (largest.size() < largestFilesLimit) {
+                largest.add(entry);
+            } else if (entry.size() > largest.peek().size()) {
+                largest.poll();
+                largest.add(entry);
+            }
+            if (largest.size() == largestFilesLimit) {
+                largestThreshold = largest.peek().size();
+            }
+        }
+
+        DirectoryStats toStats(String path, Duration elapsed) {
+            List<DirectoryEntry> top;
+            synchronized (this) {
+                top = new ArrayList<>(largest);
+            }
+            top.sort(BY_SIZE.reversed());
+
+            Map<String, DirectoryStats.ExtensionStats> extensions = new LinkedHashMap<>();
+            byExtension.entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey(), new DirectoryStats.ExtensionStats(
+                    entry.getValue()[0].sum(), entry.getValue()[1].sum())))
+                .sorted(Map.Entry.<String, DirectoryStats.ExtensionStats>comparingByValue(
+                    Comparator.comparingLong(DirectoryStats.ExtensionStats::totalBytes)).reversed())
+                .forEach(entry -> extensions.put(entry.getKey(), entry.getValue()));
+
+            return new DirectoryStats(path, totalBytes.sum(), fileCount.sum(), directoryCount.sum(),
+                inaccessibleCount.sum(), List.copyOf(top), extensions, !stopped, elapsed);
+        }
+
+        /**
+         * Задача обхода одной директории: файлы учитываются сразу,
+         * поддиректории обрабатываются параллельными подзадачами
+         */
+        final class DirectoryTask extends RecursiveAction {
+
+            private final Path directory;
+
+            DirectoryTask(Path directory) {
+                this.directory = directory;
+            }
+
+            @Override
+            protected void compute() {
+                if (shouldStop()) {
+                    return;
+                }
+                directoryCount.increment();
+                List<DirectoryTask> subtasks = new ArrayList<>();
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                    for (Path entry : entries) {
+                        if (shouldStop()) {
+                            break;
+                        }
+                        BasicFileAttributes attributes;
+                        try {
+                            attributes = Files.readAttributes(entry, BasicFileAttributes.class,
+                                LinkOption.NOFOLLOW_LINKS);
+                        } catch (IOException e) {
+                            inaccessibleCount.increment();
+                            continue;
+                        }
+                        if (attributes.isDirectory()) {
+                            DirectoryTask subtask = new DirectoryTask(entry);
+                            subtask.fork();
+                            subtasks.add(subtask);
+                        } else if (attributes.isRegularFile()) {
+                            addFile(entry, attributes);
+                        }
+                    }
+                } catch (IOException e) {
+                    // Директория недоступна или удалена во время обхода
+                    inaccessibleCount.increment();
+                }
+                for (DirectoryTask subtask : subtasks) {
+                    subtask.join();
+                }
+            }
+        }
+    }
+}
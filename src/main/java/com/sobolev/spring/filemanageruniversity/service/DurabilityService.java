@@ -0,0 +1,326 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.exception.ValidationException;
+import com.sobolev.spring.filemanageruniversity.util.FileNameUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Гарантии сохранности записанных данных.
+ * Полная перезапись идет во временный файл рядом с целевым, который атомарно
+ * переименовывается (ATOMIC_MOVE), поэтому читатели видят либо старое, либо новое
+ * содержимое. Режимы filemanager.durability.mode:
+ * FSYNC - fsync данных, метаданных и директории в каждой операции;
+ * GROUP - данные сбрасываются fdatasync в потоке записи (параллельные вызовы
+ * объединяются журналом ФС), а переименования и fsync директорий выполняет один
+ * поток пачкой за окно filemanager.durability.group.window.ms - одна
+ * синхронизация директории на всех писателей окна;
+ * RELAXED - без fsync в операции, измененные файлы и директории синхронизируются
+ * фоновым потоком раз в filemanager.durability.relaxed.interval.ms.
+ * В режимах FSYNC и GROUP данные сбрасываются до переименования, и после сбоя
+ * системы остается старое или новое содержимое. В RELAXED переименование
+ * выполняется до сброса данных: после сбоя в пределах интервала синхронизации
+ * файл может оказаться пустым или неполным.
+ */
+@Component
+public class DurabilityService {
+
+    public enum Mode {
+        FSYNC,
+        GROUP,
+        RELAXED
+    }
+
+    @Value("${filemanager.durability.mode:fsync}")
+    private String modeProperty; // fsync, group или relaxed
+
+    @Value("${filemanager.durability.group.window.ms:2}")
+    private long groupWindowMs; // Сколько ждать других писателей после первого запроса
+
+    @Value("${filemanager.durability.group.max.batch:256}")
+    private int groupMaxBatch;
+
+    @Value("${filemanager.durability.relaxed.interval.ms:1000}")
+    private long relaxedIntervalMs;
+
+    private final BlockingQueue<PendingCommit> commits = new LinkedBlockingQueue<>();
+    // Пути, ожидающие фоновой синхронизации в режиме RELAXED
+    private final Set<Path> dirty = ConcurrentHashMap.newKeySet();
+
+    private Mode mode;
+    private Thread worker;
+    private volatile boolean running;
+    // Проверка running и постановка в очередь выполняются атомарно относительно остановки
+    private final ReentrantLock submitLock = new ReentrantLock();
+
+    @PostConstruct
+    public void start() {
+        try {
+            mode = Mode.valueOf(modeProperty.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Неизвестный режим сохранности: " + modeProperty);
+        }
+        if (mode == Mode.GROUP && (groupWindowMs < 0 || groupMaxBatch <= 0)) {
+            throw new ValidationException("Некорректные параметры группового сброса на диск");
+        }
+        if (mode == Mode.RELAXED && relaxedIntervalMs <= 0) {
+            throw new ValidationException("Интервал фоновой синхронизации должен быть положительным");
+        }
+        if (mode == Mode.FSYNC) {
+            return;
+        }
+        running = true;
+        worker = mode == Mode.GROUP
+            ? new Thread(this::groupCommitLoop, "durability-group-commit")
+            : new Thread(this::relaxedSyncLoop, "durability-sync");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (worker == null) {
+            return;
+        }
+        stopAccepting();
+        worker.join();
+        // Запросы, поступившие в момент остановки, и несинхронизированные пути
+        List<PendingCommit> rest = new ArrayList<>();
+        commits.drainTo(rest);
+        commitBatch(rest);
+        syncDirty();
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Временный файл для полной перезаписи target. Создается в той же директории,
+     * чтобы переименование было атомарным.
+     */
+    public Path newTempFile(Path target) {
+        return FileNameUtils.temporarySibling(target, "tmp");
+    }
+
+    /**
+     * Делает содержимое временного файла содержимым target.
+     * Канал временного файла должен быть открыт на запись и закрывается вызывающим кодом.
+     * При ошибке временный файл удаляется.
+     */
+    public void commitReplace(FileChannel channel, Path temp, Path target) throws IOException {
+        try {
+            switch (mode) {
+                case FSYNC -> {
+                    channel.force(true);
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    syncDirectory(target.getParent());
+                }
+                case GROUP -> {
+                    channel.force(false);
+                    awaitGroupCommit(new PendingCommit(temp, target));
+                }
+                case RELAXED -> {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    dirty.add(target);
+                    dirty.add(target.getParent());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Делает долговечной запись на месте (дозапись, запись по смещению)
+     */
+    public void commitInPlace(FileChannel channel, Path path) throws IOException {
+        switch (mode) {
+            case FSYNC -> channel.force(true);
+            // Размер файла входит в fdatasync, остальные метаданные для чтения данных не нужны
+            case GROUP -> channel.force(false);
+            case RELAXED -> dirty.add(path);
+        }
+    }
+
+    private void awaitGroupCommit(PendingCommit commit) throws IOException {
+        boolean queued;
+        submitLock.lock();
+        try {
+            // После остановки потока сброса запрос не должен остаться в очереди навсегда
+            queued = running;
+            if (queued) {
+                commits.add(commit);
+            }
+        } finally {
+            submitLock.unlock();
+        }
+        if (!queued) {
+            commitBatch(List.of(commit));
+        }
+        try {
+            commit.done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Ожидание сброса на диск прервано");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Ошибка сброса на диск", e.getCause());
+        }
+    }
+
+    private void groupCommitLoop() {
+        List<PendingCommit> batch = new ArrayList<>();
+        while (running) {
+            try {
+                PendingCommit first = commits.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // Окно для параллельных писателей: они разделят fsync директорий
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(groupWindowMs);
+                while (batch.size() < groupMaxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingCommit next = remaining > 0 ? commits.poll(remaining, TimeUnit.NANOSECONDS) : commits.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopAccepting();
+            }
+            commitBatch(batch);
+            batch.clear();
+        }
+        // Новые запросы уже выполняются вызывающими потоками; очередь больше не пополняется
+        commits.drainTo(batch);
+        commitBatch(batch);
+    }
+
+    private void stopAccepting() {
+        submitLock.lock();
+        try {
+            running = false;
+        } finally {
+            submitLock.unlock();
+        }
+    }
+
+    private void commitBatch(List<PendingCommit> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Set<Path> directories = new LinkedHashSet<>();
+        List<PendingCommit> moved = new ArrayList<>(batch.size());
+        for (PendingCommit commit : batch) {
+            try {
+                Files.move(commit.temp, commit.target, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+                directories.add(commit.target.getParent());
+                moved.add(commit);
+            } catch (IOException | RuntimeException e) {
+                commit.done.completeExceptionally(e);
+            }
+        }
+        try {
+            for (Path directory : directories) {
+                syncDirectory(directory);
+            }
+            moved.forEach(commit -> commit.done.complete(null));
+        } catch (IOException e) {
+            moved.forEach(commit -> commit.done.completeExceptionally(e));
+        }
+    }
+
+    private void relaxedSyncLoop() {
+        while (running) {
+            try {
+                Thread.sleep(relaxedIntervalMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            syncDirty();
+        }
+    }
+
+    private void syncDirty() {
+        // Сначала файлы, затем директории: имя не должно пережить сбой раньше данных
+        List<Path> directories = new ArrayList<>();
+        for (Path path : List.copyOf(dirty)) {
+            dirty.remove(path);
+            if (Files.isDirectory(path)) {
+                directories.add(path);
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (NoSuchFileException e) {
+                // Файл удален или заменен - синхронизировать нечего
+            } catch (IOException e) {
+                // Повторим в следующем цикле
+                dirty.add(path);
+            }
+        }
+        for (Path directory : directories) {
+            try {
+                syncDirectory(directory);
+            } catch (IOException e) {
+                dirty.add(directory);
+            }
+        }
+    }
+
+    /**
+     * fsync директории фиксирует создание и переименование файлов в ней
+     */
+    private void syncDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            // Windows не позволяет открыть директорию как канал - переименование там уже надежно
+        }
+    }
+
+    private static final class PendingCommit {
+
+        private final Path temp;
+        private final Path target;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private PendingCommit(Path temp, Path target) {
+            this.temp = temp;
+            this.target = target;
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.dto.LockStats;
+import com.sobolev.spring.filemanageruniversity.exception.ValidationException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Блокировки файлов по пути внутри JVM.
+ * Путь отображается на одну из фиксированного числа полос (StampedLock), поэтому
+ * память не растет с числом файлов; разные пути на одной полосе дают лишь лишнее
+ * ожидание. Блокировки ОС (FileLock) берутся поверх только при
+ * filemanager.lock.cross-process=true - для координации с другими экземплярами
+ * приложения. Они ставятся не на сами файлы, а на байт-регионы общего файла
+ * блокировок: регион не меняется при атомарной замене файла и не требует
+ * создавать файл, которого еще нет. Регион определяется хешем пути и всегда
+ * лежит внутри одной полосы, поэтому процессы должны использовать один файл
+ * блокировок и одинаковые абсолютные пути.
+ * StampedLock не реентерабелен: поток не должен повторно блокировать тот же путь.
+ */
+@Component
+public class FileLockManager {
+
+    private static final int MAX_STRIPES = 1 << 16;
+    private static final int OS_REGIONS = MAX_STRIPES; // Регион ОС однозначно определяет полосу
+
+    @Value("${filemanager.lock.stripes:256}")
+    private int stripeCount; // Округляется вверх до степени двойки
+
+    @Value("${filemanager.lock.cross-process:false}")
+    private boolean crossProcess; // Дополнительно брать блокировки ОС
+
+    @Value("${filemanager.lock.file:./file-locks.lck}")
+    private String lockFileProperty; // Общий файл блокировок ОС для всех экземпляров
+
+    private final LongAdder readAcquisitions = new LongAdder();
+    private final LongAdder writeAcquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder optimisticReads = new LongAdder();
+    private final LongAdder optimisticFailures = new LongAdder();
+
+    // Блокировки ОС по региону; shared-блокировка одна на все потоки-читатели JVM
+    private final Map<Integer, OsLock> osLocks = new ConcurrentHashMap<>();
+
+    private StampedLock[] stripes;
+    // Учет блокировок ОС полосы; ReentrantLock, так как под ним поток ждет FileLock
+    private ReentrantLock[] osGuards;
+    private FileChannel lockFile;
+
+    @PostConstruct
+    public void init() {
+        if (stripeCount <= 0 || stripeCount > MAX_STRIPES) {
+            throw new ValidationException("Число полос блокировок должно быть от 1 до " + MAX_STRIPES);
+        }
+        int size = stripeCount == 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1;
+        stripes = new StampedLock[size];
+        osGuards = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new StampedLock();
+            osGuards[i] = new ReentrantLock();
+        }
+        if (crossProcess) {
+            Path path = Paths.get(lockFileProperty).toAbsolutePath().normalize();
+            try {
+                Files.createDirectories(path.getParent());
+                lockFile = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось открыть файл блокировок: " + path, e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (lockFile != null) {
+            // Закрытие канала снимает оставшиеся блокировки ОС
+            lockFile.close();
+        }
+    }
+
+    public boolean isCrossProcess() {
+        return crossProcess;
+    }
+
+    /**
+     * Разделяемая блокировка пути для чтения
+     */
+    public Handle lockRead(Path path) throws IOException {
+        return acquire(new Path[] {path}, new boolean[] {false});
+    }
+
+    /**
+     * Эксклюзивная блокировка пути для записи или удаления
+     */
+    public Handle lockWrite(Path path) throws IOException {
+        return acquire(new Path[] {path}, new boolean[] {true});
+    }
+
+    /**
+     * Блокировка для копирования: источник - для чтения, назначение - для записи
+     */
+    public Handle lockForCopy(Path source, Path target) throws IOException {
+        return acquire(new Path[] {source, target}, new boolean[] {false, true});
+    }
+
+    /**
+     * Блокировка для перемещения: оба пути - эксклюзивно
+     */
+    public Handle lockForMove(Path source, Path target) throws IOException {
+        return acquire(new Path[] {source, target}, new boolean[] {true, true});
+    }
+
+    /**
+     * Оптимистичное чтение: reader выполняется без блокировки, и результат
+     * принимается, если за это время полосу пути никто не блокировал на запись.
+     * Иначе чтение повторяется под обычной разделяемой блокировкой.
+     * При блокировках ОС оптимистичное чтение не используется.
+     */
+    public <T> T optimisticRead(Path path, IoSupplier<T> reader) throws IOException {
+        if (!crossProcess) {
+            StampedLock lock = stripes[indexFor(path)];
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                optimisticReads.increment();
+                try {
+                    T result = reader.get();
+                    if (lock.validate(stamp)) {
+                        return result;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // Ошибка из-за параллельной записи не считается результатом чтения
+                    if (lock.validate(stamp)) {
+                        throw e;
+                    }
+                }
+                optimisticFailures.increment();
+            }
+        }
+        try (Handle ignored = lockRead(path)) {
+            return reader.get();
+        }
+    }
+
+    public LockStats getStats() {
+        return new LockStats(readAcquisitions.sum(), writeAcquisitions.sum(), contended.sum(),
+            totalWaitNanos.sum(), maxWaitNanos.get(), optimisticReads.sum(), optimisticFailures.sum());
+    }
+
+    private Handle acquire(Path[] paths, boolean[] exclusive) throws IOException {
+        // Полосы берутся по возрастанию индекса, поэтому пары путей не взаимоблокируются;
+        // два пути на одной полосе дают одну блокировку с самым строгим режимом
+        int[] indexes = new int[paths.length];
+        boolean[] modes = new boolean[paths.length];
+        int count = 0;
+        for (int i = 0; i < paths.length; i++) {
+            int index = indexFor(paths[i]);
+            int position = 0;
+            while (position < count && indexes[position] < index) {
+                position++;
+            }
+            if (position < count && indexes[position] == index) {
+                modes[position] |= exclusive[i];
+                continue;
+            }
+            System.arraycopy(indexes, position, indexes, position + 1, count - position);
+            System.arraycopy(modes, position, modes, position + 1, count - position);
+            indexes[position] = index;
+            modes[position] = exclusive[i];
+            count++;
+        }
+
+        Handle handle = new Handle(count, crossProcess ? paths.length : 0);
+        try {
+            for (int i = 0; i < count; i++) {
+                handle.addStripe(indexes[i], lockStripe(stripes[indexes[i]], modes[i]));
+            }
+            if (crossProcess) {
+                // Регионы ОС - по возрастанию, как полосы, чтобы процессы не взаимоблокировались;
+                // регионы двух путей совпадают - берется один в самом строгом режиме
+                int[] regions = new int[paths.length];
+                boolean[] regionModes = new boolean[paths.length];
+                int regionCount = 0;
+                for (int i = 0; i < paths.length; i++) {
+                    int region = regionFor(paths[i]);
+                    int position = 0;
+                    while (position < regionCount && regions[position] < region) {
+                        position++;
+                    }
+                    if (position < regionCount && regions[position] == region) {
+                        regionModes[position] |= exclusive[i];
+                        continue;
+                    }
+                    System.arraycopy(regions, position, regions, position + 1, regionCount - position);
+                    System.arraycopy(regionModes, position, regionModes, position + 1, regionCount - position);
+                    regions[position] = region;
+                    regionModes[position] = exclusive[i];
+                    regionCount++;
+                }
+                for (int i = 0; i < regionCount; i++) {
+                    lockOs(regions[i], regionModes[i]);
+                    handle.addOsLock(regions[i]);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            handle.close();
+            throw e;
+        }
+        return handle;
+    }
+
+    private long lockStripe(StampedLock lock, boolean exclusive) throws IOException {
+        long stamp = exclusive ? lock.tryWriteLock() : lock.tryReadLock();
+        if (stamp == 0) {
+            long start = System.nanoTime();
+            try {
+                stamp = exclusive ? lock.writeLockInterruptibly() : lock.readLockInterruptibly();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Ожидание блокировки файла прервано");
+            }
+            recordWait(System.nanoTime() - start);
+        }
+        (exclusive ? writeAcquisitions : readAcquisitions).increment();
+        return stamp;
+    }
+
+    private void lockOs(int region, boolean exclusive) throws IOException {
+        // Полоса региона уже заблокирована, поэтому существующая блокировка ОС
+        // региона может быть только разделяемой, а эксклюзивный владелец всегда один
+        ReentrantLock guard = osGuards[region & (stripes.length - 1)];
+        guard.lock();
+        try {
+            OsLock existing = osLocks.get(region);
+            if (existing != null) {
+                existing.holders++;
+                return;
+            }
+            FileLock lock = lockFile.tryLock(region, 1, !exclusive);
+            if (lock == null) {
+                long start = System.nanoTime();
+                lock = lockFile.lock(region, 1, !exclusive);
+                recordWait(System.nanoTime() - start);
+            }
+            osLocks.put(region, new OsLock(lock));
+        } finally {
+            guard.unlock();
+        }
+    }
+
+    private void unlockOs(int region) throws IOException {
+        ReentrantLock guard = osGuards[region & (stripes.length - 1)];
+        guard.lock();
+        try {
+            OsLock osLock = osLocks.get(region);
+            if (osLock == null || --osLock.holders > 0) {
+                return;
+            }
+            osLocks.remove(region);
+            osLock.lock.release();
+        } finally {
+            guard.unlock();
+        }
+    }
+
+    private void recordWait(long nanos) {
+        contended.increment();
+        totalWaitNanos.add(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private int indexFor(Path path) {
+        return regionFor(path) & (stripes.length - 1);
+    }
+
+    private static int regionFor(Path path) {
+        int hash = path.hashCode();
+        return (hash ^ (hash >>> 16)) & (OS_REGIONS - 1);
+    }
+
+    /**
+     * Захваченные блокировки; освобождаются при закрытии (try-with-resources).
+     * Может быть закрыт из другого потока - StampedLock не привязан к владельцу.
+     */
+    public final class Handle implements Closeable {
+
+        private final int[] stripeIndexes;
+        private final long[] stamps;
+        private final int[] osLocked;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private int stripeCount;
+        private int osCount;
+
+        private Handle(int stripeCapacity, int osCapacity) {
+            this.stripeIndexes = new int[stripeCapacity];
+            this.stamps = new long[stripeCapacity];
+            this.osLocked = new int[osCapacity];
+        }
+
+        private void addStripe(int index, long stamp) {
+            stripeIndexes[stripeCount] = index;
+            stamps[stripeCount] = stamp;
+            stripeCount++;
+        }
+
+        private void addOsLock(int region) {
+            osLocked[osCount++] = region;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            IOException failure = null;
+            for (int i = osCount - 1; i >= 0; i--) {
+                try {
+                    unlockOs(osLocked[i]);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            for (int i = stripeCount - 1; i >= 0; i--) {
+                stripes[stripeIndexes[i]].unlock(stamps[i]);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface IoSupplier<T> {
+        T get() throws IOException;
+    }
+
+    private static final class OsLock {
+
+        private final FileLock lock;
+        private int holders = 1;
+
+        private OsLock(FileLock lock) {
+            this.lock = lock;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.entity.FileEntity;
+import com.sobolev.spring.filemanageruniversity.entity.User;
+import com.sobolev.spring.filemanageruniversity.repository.FileRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограниченный по размеру LRU-кэш метаданных FileEntity по нормализованному пути.
+ * Избавляет от запроса к БД при каждом findByLocation. Кэшируются только
+ * найденные записи; при откате транзакции затронутые пути вытесняются,
+ * чтобы в кэше не осталось неподтвержденное состояние. Все изменения
+ * file_entity по пути должны сопровождаться put или evict.
+ * Кэш хранит неизменяемые снимки записей и при каждом обращении возвращает
+ * новый отсоединенный экземпляр FileEntity, поэтому изменения экземпляра
+ * вызывающим кодом не видны другим потокам до сохранения и put.
+ * Загрузка при промахе не блокирует путь и может прочитать строку до того, как
+ * конкурентный put или evict изменит ее. Поэтому у путей есть счетчики поколений,
+ * которые увеличивают put, evict и завершение их транзакций: загруженная строка
+ * кэшируется, только если поколение пути не изменилось с начала загрузки.
+ */
+@Component
+public class FileMetadataCache {
+
+    // Счетчики поколений распределяются по путям по хешу: совпадение полос
+    // лишь пропускает кэширование загруженной строки
+    private static final int GENERATION_STRIPES = 4096;
+
+    private final FileRepository fileRepository;
+    private final EntityManager entityManager;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Value("${filemanager.metadata.cache.capacity:10000}")
+    private int capacity;
+
+    private Map<String, Snapshot> entries;
+    private final long[] generations = new long[GENERATION_STRIPES];
+    // Увеличивается при clear и учитывается вместе с поколением пути
+    private long clears;
+
+    @Autowired
+    public FileMetadataCache(FileRepository fileRepository, EntityManager entityManager) {
+        this.fileRepository = fileRepository;
+        this.entityManager = entityManager;
+    }
+
+    @PostConstruct
+    public void init() {
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public Optional<FileEntity> findByLocation(String location) {
+        Snapshot cached;
+        long generation;
+        long clearsBefore;
+        synchronized (this) {
+            cached = entries.get(location);
+            generation = generations[stripe(location)];
+            clearsBefore = clears;
+        }
+        if (cached != null) {
+            hits.incrementAndGet();
+            return Optional.of(cached.toEntity());
+        }
+        misses.incrementAndGet();
+        Optional<FileEntity> loaded = fileRepository.findByLocation(location);
+        loaded.ifPresent(fileEntity -> {
+            // Возвращаемый экземпляр не должен оставаться управляемым: нативный upsert
+            // по тому же пути вернул бы его же с устаревшими полями
+            if (entityManager.contains(fileEntity)) {
+                entityManager.detach(fileEntity);
+            }
+            Snapshot snapshot = Snapshot.of(fileEntity);
+            synchronized (this) {
+                // Пока строка загружалась, путь мог быть изменен - тогда она могла устареть
+                if (generations[stripe(location)] == generation && clears == clearsBefore) {
+                    entries.put(location, snapshot);
+                }
+            }
+        });
+        return loaded;
+    }
+
+    public void put(FileEntity fileEntity) {
+        if (fileEntity == null || fileEntity.getId() == null) {
+            return;
+        }
+        String location = fileEntity.getLocation();
+        Snapshot snapshot = Snapshot.of(fileEntity);
+        synchronized (this) {
+            generations[stripe(location)]++;
+            entries.put(location, snapshot);
+        }
+        afterCompletion(location, snapshot);
+    }
+
+    public void evict(String location) {
+        synchronized (this) {
+            generations[stripe(location)]++;
+            entries.remove(location);
+        }
+        afterCompletion(location, null);
+    }
+
+    public synchronized void clear() {
+        clears++;
+        entries.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * До фиксации транзакции загрузка при промахе читает прежнюю строку и могла
+     * закэшировать ее. После фиксации в кэше остается только снимок этой транзакции,
+     * после отката путь вытесняется; поколение увеличивается в обоих случаях,
+     * чтобы незавершенные загрузки не закэшировали прочитанное до фиксации.
+     */
+    private void afterCompletion(String location, Snapshot written) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (FileMetadataCache.this) {
+                    generations[stripe(location)]++;
+                    if (status != STATUS_COMMITTED || written == null || entries.get(location) != written) {
+                        entries.remove(location);
+                    }
+                }
+            }
+        });
+    }
+
+    private static int stripe(String location) {
+        return (location.hashCode() & 0x7fffffff) % GENERATION_STRIPES;
+    }
+
+    /**
+     * Неизменяемый снимок полей FileEntity. Владелец хранится ссылкой:
+     * код работы с файлами его не изменяет.
+     */
+    private record Snapshot(Long id, String filename, LocalDateTime createdAt, Long size, String location,
+                            User owner, String fileType, Boolean isArchived, String checksum,
+                            Long crc32c, Integer chunkSize) {
+
+        static Snapshot of(FileEntity fileEntity) {
+            return new Snapshot(fileEntity.getId(), fileEntity.getFilename(), fileEntity.getCreatedAt(),
+                fileEntity.getSize(), fileEntity.getLocation(), fileEntity.getOwner(), fileEntity.getFileType(),
+                fileEntity.getIsArchived(), fileEntity.getChecksum(), fileEntity.getCrc32c(),
+                fileEntity.getChunkSize());
+        }
+
+        FileEntity toEntity() {
+            FileEntity fileEntity = new FileEntity();
+            fileEntity.setId(id);
+            fileEntity.setFilename(filename);
+            fileEntity.setCreatedAt(createdAt);
+            fileEntity.setSize(size);
+            fileEntity.setLocation(location);
+            fileEntity.setOwner(owner);
+            fileEntity.setFileType(fileType);
+            fileEntity.setIsArchived(isArchived);
+            fileEntity.setChecksum(checksum);
+            fileEntity.setCrc32c(crc32c);
+            fileEntity.setChunkSize(chunkSize);
+            return fileEntity;
+        }
+    }
+}
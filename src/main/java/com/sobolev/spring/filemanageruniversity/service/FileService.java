@@ -1,10 +1,16 @@
 package com.sobolev.spring.filemanageruniversity.service;
 
+import com.sobolev.spring.filemanageruniversity.dto.FileSort;
+import com.sobolev.spring.filemanageruniversity.dto.FileView;
 import com.sobolev.spring.filemanageruniversity.entity.FileEntity;
 import com.sobolev.spring.filemanageruniversity.entity.OperationType;
 import com.sobolev.spring.filemanageruniversity.entity.User;
 import com.sobolev.spring.filemanageruniversity.repository.FileRepository;
+import com.sobolev.spring.filemanageruniversity.util.ChecksumUtils;
+import com.sobolev.spring.filemanageruniversity.util.FileNameUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -12,16 +18,21 @@ import com.sobolev.spring.filemanageruniversity.config.FileManagerConstants;
 import com.sobolev.spring.filemanageruniversity.exception.FileNotFoundException;
 import com.sobolev.spring.filemanageruniversity.exception.ValidationException;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.security.MessageDigest;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
 
 
 @Service
@@ -30,12 +41,42 @@ public class FileService {
     private final FileRepository fileRepository;
     private final SecurityService securityService;
     private final AuditService auditService;
+    private final MappedFileReader mappedFileReader;
+    private final BlobStoreService blobStoreService;
+    private final ChecksumCache checksumCache;
+    private final ContentHasher contentHasher;
+    private final ChunkHashService chunkHashService;
+    private final HashPolicy hashPolicy;
+    private final DeferredHashService deferredHashService;
+    private final FileMetadataCache metadataCache;
+    private final FileLockManager fileLockManager;
+    private final DurabilityService durabilityService;
+    private final SearchIndexService searchIndexService;
+    private final LineIndexService lineIndexService;
 
     @Autowired
-    public FileService(FileRepository fileRepository, SecurityService securityService, AuditService auditService) {
+    public FileService(FileRepository fileRepository, SecurityService securityService, AuditService auditService,
+                       MappedFileReader mappedFileReader, BlobStoreService blobStoreService,
+                       ChecksumCache checksumCache, ContentHasher contentHasher,
+                       ChunkHashService chunkHashService, HashPolicy hashPolicy,
+                       DeferredHashService deferredHashService, FileMetadataCache metadataCache,
+                       FileLockManager fileLockManager, DurabilityService durabilityService,
+                       SearchIndexService searchIndexService, LineIndexService lineIndexService) {
         this.fileRepository = fileRepository;
         this.securityService = securityService;
         this.auditService = auditService;
+        this.mappedFileReader = mappedFileReader;
+        this.blobStoreService = blobStoreService;
+        this.checksumCache = checksumCache;
+        this.contentHasher = contentHasher;
+        this.chunkHashService = chunkHashService;
+        this.hashPolicy = hashPolicy;
+        this.deferredHashService = deferredHashService;
+        this.metadataCache = metadataCache;
+        this.fileLockManager = fileLockManager;
+        this.durabilityService = durabilityService;
+        this.searchIndexService = searchIndexService;
+        this.lineIndexService = lineIndexService;
     }
 
 
@@ -50,59 +91,194 @@ public class FileService {
         
         securityService.validateFileSize(file.length());
         
-        // Защита от Race Conditions: используем FileLock
-        try (FileInputStream fis = new FileInputStream(file);
-             FileChannel channel = fis.getChannel();
-             FileLock lock = channel.lock(0, Long.MAX_VALUE, true)) { // Shared lock для чтения
+        // Защита от Race Conditions: разделяемая блокировка пути для чтения
+        try (FileLockManager.Handle lock = fileLockManager.lockRead(validatedPath);
+             FileChannel channel = FileChannel.open(validatedPath, StandardOpenOption.READ)) {
             
-            byte[] content = Files.readAllBytes(validatedPath);
-            String contentStr = new String(content, FileManagerConstants.DEFAULT_CHARSET);
+            // Большие файлы декодируются из отображенных окон без промежуточной копии в куче
+            String contentStr = mappedFileReader.readString(channel, 0, channel.size(),
+                Charset.forName(FileManagerConstants.DEFAULT_CHARSET));
             
             // Логируем операцию
-            FileEntity fileEntity = findOrCreateFileEntity(filePath, file, user);
+            FileEntity fileEntity = findOrCreateFileEntity(validatedPath, file, user);
             auditService.logOperation(user, OperationType.READ, fileEntity, "Чтение файла: " + filePath);
             
             return contentStr;
         }
     }
 
+    /**
+     * Потоковое чтение диапазона файла без загрузки всего содержимого в память.
+     * Shared-блокировка удерживается до закрытия возвращенного потока,
+     * поэтому вызывающий код обязан закрыть его (try-with-resources).
+     * @param offset смещение начала диапазона в байтах
+     * @param length длина диапазона; Long.MAX_VALUE - до конца файла
+     */
     @Transactional
-    public void writeFile(String filePath, String content, User user) throws IOException {
+    public InputStream openFileStream(String filePath, long offset, long length, User user) throws IOException {
         Path validatedPath = securityService.validateAndNormalizePath(filePath);
-        
+        File file = validatedPath.toFile();
+
+        if (!file.exists()) {
+            throw new FileNotFoundException(filePath);
+        }
+        validateRange(offset, length);
+
+        // Защита от Race Conditions: разделяемая блокировка живет вместе с потоком
+        FileLockManager.Handle lock = fileLockManager.lockRead(validatedPath);
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(validatedPath, StandardOpenOption.READ);
+            long size = channel.size();
+            long start = Math.min(offset, size);
+            long rangeLength = Math.min(length, size - start);
+
+            FileEntity fileEntity = findOrCreateFileEntity(validatedPath, file, user);
+            auditService.logOperation(user, OperationType.READ, fileEntity,
+                "Потоковое чтение файла: " + filePath + " (смещение " + start + ", длина " + rangeLength + ")");
+
+            // Большие диапазоны читаются из отображенных окон, небольшие - позиционным чтением
+            return mappedFileReader.openStream(channel, lock, start, rangeLength);
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            lock.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Чтение диапазона файла в массив байт. Размер диапазона ограничен
+     * максимальным размером файла, а не размером самого файла.
+     */
+    @Transactional
+    public byte[] readFileRange(String filePath, long offset, int length, User user) throws IOException {
+        securityService.validateFileSize(length);
+        try (InputStream in = openFileStream(filePath, offset, length, user)) {
+            return in.readNBytes(length);
+        }
+    }
+
+    @Transactional
+    public void writeFile(String filePath, String content, User user) throws IOException {
         byte[] contentBytes = content.getBytes(FileManagerConstants.DEFAULT_CHARSET);
         securityService.validateFileSize(contentBytes.length);
+        writeFile(filePath, new ByteArrayInputStream(contentBytes), user);
+    }
+
+    /**
+     * Потоковая запись файла: содержимое читается из потока порциями и не
+     * держится в памяти целиком. Контрольная сумма (SHA-256 или дерево хешей
+     * блоков для больших файлов) считается в том же проходе, поэтому после
+     * записи файл повторно не читается. Данные пишутся во временный файл,
+     * который атомарно заменяет прежний: при сбое файл не остается недописанным.
+     */
+    @Transactional
+    public void writeFile(String filePath, InputStream content, User user) throws IOException {
+        Path validatedPath = securityService.validateAndNormalizePath(filePath);
         
         // Создаем директорию, если не существует
         Files.createDirectories(validatedPath.getParent());
         
         File file = validatedPath.toFile();
         boolean fileExists = file.exists();
+        OperationType operationType = fileExists ? OperationType.MODIFY : OperationType.CREATE;
+        HashPolicy.Mode hashMode = hashPolicy.modeFor(validatedPath, operationType);
         
-        // Защита от Race Conditions: используем FileLock
-        try (FileOutputStream fos = new FileOutputStream(file);
-             FileChannel channel = fos.getChannel();
-             FileLock lock = channel.lock(0, Long.MAX_VALUE, false)) { // Exclusive lock для записи
+        // Защита от Race Conditions: эксклюзивная блокировка на все время записи.
+        // Переименование заменяет inode целиком, поэтому общее с другими файлами
+        // содержимое не затрагивается
+        Path tempPath = durabilityService.newTempFile(validatedPath);
+        try (FileLockManager.Handle lock = fileLockManager.lockWrite(validatedPath);
+             FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE_NEW,
+                 StandardOpenOption.READ, StandardOpenOption.WRITE)) {
             
-            // Безопасная запись файла через FileChannel
-            java.nio.ByteBuffer buffer = java.nio.ByteBuffer.wrap(contentBytes);
-            channel.write(buffer);
-            channel.force(true); // Принудительная запись на диск
+            // Безопасная запись файла через FileChannel с вычислением хешей на лету:
+            // CRC32C - всегда, SHA-256 - если политика не откладывает его
+            CRC32C crc = new CRC32C();
+            ContentDigest digest = hashMode == HashPolicy.Mode.INLINE ? contentHasher.newDigest(channel) : null;
+            byte[] chunk = new byte[FileManagerConstants.BUFFER_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            long size = 0;
+            int bytesRead;
+            while ((bytesRead = content.read(chunk)) != -1) {
+                size += bytesRead;
+                // Лимит размера проверяется по мере поступления данных
+                securityService.validateFileSize(size);
+                crc.update(chunk, 0, bytesRead);
+                if (digest != null) {
+                    digest.update(chunk, 0, bytesRead);
+                }
+                buffer.clear().limit(bytesRead);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            // Сброс на диск и атомарная замена - по режиму сохранности
+            durabilityService.commitReplace(channel, tempPath, validatedPath);
+            lineIndexService.invalidate(validatedPath);
+            ContentHash contentHash = digest != null ? digest.finish() : ContentHash.flat(null);
+            String checksum = contentHash.checksum();
             
-            // Обновляем или создаем запись в БД
-            FileEntity fileEntity = findOrCreateFileEntity(filePath, file, user);
-            fileEntity.setSize((long) contentBytes.length);
-            fileEntity.setCreatedAt(LocalDateTime.now());
-            fileEntity.setChecksum(calculateChecksum(file));
-            fileRepository.save(fileEntity);
+            // Обновляем или создаем запись в БД одним запросом
+            String previousChecksum = findPreviousChecksum(validatedPath);
+            FileEntity fileEntity = fileRepository.upsertByLocation(validatedPath.getFileName().toString(),
+                LocalDateTime.now(), size, validatedPath.toString(), user.getId(),
+                FileNameUtils.getExtension(validatedPath.getFileName().toString()), checksum, crc.getValue());
+            chunkHashService.store(fileEntity, contentHash);
+            metadataCache.put(fileEntity);
+            if (checksum != null) {
+                // Кэш подтверждает сумму для adopt, поэтому заполняется до него
+                checksumCache.put(validatedPath, Files.readAttributes(validatedPath, BasicFileAttributes.class), checksum);
+                blobStoreService.adopt(validatedPath, checksum);
+            } else {
+                checksumCache.invalidate(validatedPath);
+            }
+            if (previousChecksum != null && !previousChecksum.equals(checksum)) {
+                blobStoreService.release(previousChecksum);
+            }
+            if (hashMode == HashPolicy.Mode.DEFERRED) {
+                deferredHashService.schedule(fileEntity);
+            }
+            searchIndexService.scheduleIndex(fileEntity);
             
             // Логируем операцию
-            OperationType operationType = fileExists ? OperationType.MODIFY : OperationType.CREATE;
             auditService.logOperation(user, operationType, fileEntity, 
                 (fileExists ? "Изменение" : "Создание") + " файла: " + filePath);
+        } catch (IOException | RuntimeException e) {
+            // Недописанный временный файл не должен оставаться рядом с целевым
+            Files.deleteIfExists(tempPath);
+            throw e;
         }
     }
 
+    @Transactional
+    public void appendFile(String filePath, String content, User user) throws IOException {
+        byte[] contentBytes = content.getBytes(FileManagerConstants.DEFAULT_CHARSET);
+        securityService.validateFileSize(contentBytes.length);
+        appendFile(filePath, new ByteArrayInputStream(contentBytes), user);
+    }
+
+    /**
+     * Дозапись в конец файла: существующее содержимое не перезаписывается
+     * и повторно не читается. Отсутствующий файл создается.
+     */
+    @Transactional
+    public void appendFile(String filePath, InputStream content, User user) throws IOException {
+        writePartial(filePath, -1, content, user);
+    }
+
+    /**
+     * Запись по смещению (pwrite): изменяется только диапазон от offset
+     * до конца переданных данных, запись за концом файла удлиняет его.
+     */
+    @Transactional
+    public void writeFileAt(String filePath, long offset, InputStream content, User user) throws IOException {
+        validateRange(offset, 0);
+        writePartial(filePath, offset, content, user);
+    }
+
     @Transactional
     public void deleteFile(String filePath, User user) throws IOException {
         Path validatedPath = securityService.validateAndNormalizePath(filePath);
@@ -113,28 +289,26 @@ public class FileService {
         }
         
         // Находим файл в БД перед блокировкой
-        Optional<FileEntity> fileEntityOpt = fileRepository.findByLocation(validatedPath.toString());
-        
-        // Защита от Race Conditions: используем FileLock перед удалением
-        // RandomAccessFile в режиме "rw" позволяет получить эксклюзивную блокировку
-        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
-             FileChannel channel = raf.getChannel();
-             FileLock lock = channel.lock(0, Long.MAX_VALUE, false)) {
-            
-            // Файл заблокирован, можно безопасно удалять
-        }
+        Optional<FileEntity> fileEntityOpt = metadataCache.findByLocation(validatedPath.toString());
         
         // Сохраняем информацию о файле перед удалением
         Long fileId = null;
         String fileName = file.getName();
+        String checksum = null;
         if (fileEntityOpt.isPresent()) {
             FileEntity fileEntity = fileEntityOpt.get();
             fileId = fileEntity.getId();
             fileName = fileEntity.getFilename();
+            checksum = fileEntity.getChecksum();
         }
         
-        // Удаляем файл после освобождения блокировки
-        Files.delete(validatedPath);
+        // Защита от Race Conditions: удаление под эксклюзивной блокировкой пути
+        try (FileLockManager.Handle lock = fileLockManager.lockWrite(validatedPath)) {
+            Files.delete(validatedPath);
+        }
+        checksumCache.invalidate(validatedPath);
+        metadataCache.evict(validatedPath.toString());
+        searchIndexService.scheduleRemove(validatedPath);
 
         // Удаляем из БД и логируем операцию
         if (fileEntityOpt.isPresent()) {
@@ -143,6 +317,8 @@ public class FileService {
             fileRepository.delete(fileEntity);
             // Flush для гарантии удаления перед логированием
             fileRepository.flush();
+            // Освобождаем ссылку на общее содержимое
+            blobStoreService.release(checksum);
             // Логируем операцию без ссылки на файл (так как он уже удален)
             auditService.logOperation(user, OperationType.DELETE, null, 
                 "Удаление файла: " + fileName + " (ID: " + fileId + ", путь: " + filePath + ")");
@@ -161,18 +337,88 @@ public class FileService {
         if (!sourceFile.exists()) {
             throw new FileNotFoundException(sourcePath);
         }
+        if (validatedSourcePath.equals(validatedDestPath)) {
+            throw new ValidationException("Файл назначения совпадает с исходным: " + destPath);
+        }
         
         securityService.validateFileSize(sourceFile.length());
         
         // Создаем директорию назначения, если не существует
         Files.createDirectories(validatedDestPath.getParent());
         
-        // Безопасное копирование с использованием NIO
-        Files.copy(validatedSourcePath, validatedDestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        // Метаданные переносятся из исходной записи - файл назначения повторно не читается
+        FileEntity sourceEntity = metadataCache.findByLocation(validatedSourcePath.toString()).orElse(null);
+        HashPolicy.Mode hashMode = hashPolicy.modeFor(validatedDestPath, OperationType.CREATE);
         
-        // Создаем запись в БД для нового файла
-        FileEntity destFileEntity = findOrCreateFileEntity(destPath, validatedDestPath.toFile(), user);
-        fileRepository.save(destFileEntity);
+        boolean checksumKnown;
+        ContentHash sourceHash;
+        String checksum;
+        Long crc32c;
+        long copiedSize;
+        // Дедупликация заменяет ссылкой на blob и исходный путь, поэтому с ней оба пути
+        // блокируются эксклюзивно; без нее источник блокируется только для чтения
+        try (FileLockManager.Handle lock = blobStoreService.isEnabled()
+                ? fileLockManager.lockForMove(validatedSourcePath, validatedDestPath)
+                : fileLockManager.lockForCopy(validatedSourcePath, validatedDestPath)) {
+            BasicFileAttributes sourceAttributes = Files.readAttributes(validatedSourcePath, BasicFileAttributes.class);
+            boolean sourceMetadataValid = sourceEntity != null
+                && sourceEntity.getSize() != null && sourceEntity.getSize() == sourceAttributes.size();
+            // Сумма из БД принимается, только если кэш подтверждает ее для текущих атрибутов:
+            // совпадения размера недостаточно, файл мог быть изменен вне файлового менеджера
+            checksumKnown = sourceMetadataValid && sourceEntity.getChecksum() != null
+                && sourceEntity.getChecksum().equals(checksumCache.get(validatedSourcePath, sourceAttributes));
+            sourceHash = checksumKnown || hashMode != HashPolicy.Mode.INLINE
+                ? null : calculateContentHash(sourceFile);
+            checksum = checksumKnown ? sourceEntity.getChecksum()
+                : sourceHash != null ? sourceHash.checksum() : null;
+            crc32c = sourceMetadataValid ? sourceEntity.getCrc32c() : null;
+            if (crc32c == null && hashMode == HashPolicy.Mode.CRC_ONLY) {
+                crc32c = calculateCrc32c(sourceFile);
+            }
+            
+            if (blobStoreService.isEnabled()) {
+                blobStoreService.adopt(validatedSourcePath, checksum);
+            }
+            if (blobStoreService.linkCopy(checksum, validatedSourcePath, validatedDestPath)) {
+                // Дедупликация: копия - это только новая ссылка на то же содержимое
+                copiedSize = sourceAttributes.size();
+            } else {
+                // Zero-copy: данные копируются в пространстве ядра без буферов в куче
+                blobStoreService.prepareForOverwrite(validatedDestPath);
+                try (FileChannel source = FileChannel.open(validatedSourcePath, StandardOpenOption.READ);
+                     FileChannel target = FileChannel.open(validatedDestPath, StandardOpenOption.CREATE,
+                         StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    copiedSize = transferContent(source, target);
+                }
+                Files.setLastModifiedTime(validatedDestPath, sourceAttributes.lastModifiedTime());
+            }
+        }
+        
+        String previousChecksum = findPreviousChecksum(validatedDestPath);
+        String destFileName = validatedDestPath.getFileName().toString();
+        FileEntity destFileEntity = fileRepository.upsertByLocation(destFileName, LocalDateTime.now(), copiedSize,
+            validatedDestPath.toString(), user.getId(),
+            sourceEntity != null && sourceEntity.getFileType() != null
+                ? sourceEntity.getFileType() : FileNameUtils.getExtension(destFileName),
+            checksum, crc32c);
+        if (checksumKnown) {
+            chunkHashService.copy(sourceEntity, destFileEntity);
+        } else {
+            chunkHashService.store(destFileEntity, sourceHash != null ? sourceHash : ContentHash.flat(null));
+        }
+        metadataCache.put(destFileEntity);
+        if (checksum != null) {
+            checksumCache.put(validatedDestPath, Files.readAttributes(validatedDestPath, BasicFileAttributes.class), checksum);
+        } else {
+            checksumCache.invalidate(validatedDestPath);
+            if (hashMode == HashPolicy.Mode.DEFERRED) {
+                deferredHashService.schedule(destFileEntity);
+            }
+        }
+        if (previousChecksum != null && !previousChecksum.equals(checksum)) {
+            blobStoreService.release(previousChecksum);
+        }
+        searchIndexService.scheduleIndex(destFileEntity);
         
         // Логируем операцию
         auditService.logOperation(user, OperationType.CREATE, destFileEntity, 
@@ -188,96 +434,352 @@ public class FileService {
         if (!sourceFile.exists()) {
             throw new FileNotFoundException(sourcePath);
         }
+        if (validatedSourcePath.equals(validatedDestPath)) {
+            throw new ValidationException("Файл назначения совпадает с исходным: " + destPath);
+        }
         
         // Создаем директорию назначения, если не существует
         Files.createDirectories(validatedDestPath.getParent());
         
         // Безопасное перемещение с использованием NIO (атомарная операция)
-        Files.move(validatedSourcePath, validatedDestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try (FileLockManager.Handle lock = fileLockManager.lockForMove(validatedSourcePath, validatedDestPath)) {
+            Files.move(validatedSourcePath, validatedDestPath, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        }
+        checksumCache.invalidate(validatedSourcePath);
+        checksumCache.invalidate(validatedDestPath);
         
         // Обновляем запись в БД
-        Optional<FileEntity> fileEntityOpt = fileRepository.findByLocation(validatedSourcePath.toString());
+        Optional<FileEntity> fileEntityOpt = metadataCache.findByLocation(validatedSourcePath.toString());
+        Optional<FileEntity> replacedEntityOpt = metadataCache.findByLocation(validatedDestPath.toString());
+        metadataCache.evict(validatedSourcePath.toString());
+        metadataCache.evict(validatedDestPath.toString());
+        if (replacedEntityOpt.isPresent()) {
+            // Замененный файл назначения больше не существует; location уникален
+            FileEntity replacedEntity = replacedEntityOpt.get();
+            fileRepository.delete(replacedEntity);
+            fileRepository.flush();
+            blobStoreService.release(replacedEntity.getChecksum());
+        }
         if (fileEntityOpt.isPresent()) {
             FileEntity fileEntity = fileEntityOpt.get();
             fileEntity.setLocation(validatedDestPath.toString());
-            fileRepository.save(fileEntity);
+            fileEntity.setFilename(validatedDestPath.getFileName().toString());
+            // Меняются только путь и имя; остальные поля перечитаются из БД при следующем обращении
+            fileRepository.updateLocation(fileEntity.getId(), fileEntity.getLocation(), fileEntity.getFilename());
+            searchIndexService.scheduleRemove(validatedSourcePath);
+            searchIndexService.scheduleIndex(fileEntity);
             
             // Логируем операцию
             auditService.logOperation(user, OperationType.MODIFY, fileEntity, 
                 "Перемещение файла из " + sourcePath + " в " + destPath);
+        } else {
+            searchIndexService.scheduleRemove(validatedSourcePath);
+            searchIndexService.scheduleRemove(validatedDestPath);
         }
     }
 
-    public List<String> listFiles(String directoryPath, User user) throws IOException {
-        Path validatedPath = securityService.validateAndNormalizePath(directoryPath);
-        File directory = validatedPath.toFile();
-        
-        if (!directory.exists()) {
-            throw new FileNotFoundException("Директория не найдена: " + directoryPath);
-        }
-        
-        if (!directory.isDirectory()) {
-            throw new ValidationException("Указанный путь не является директорией: " + directoryPath);
-        }
-
-        auditService.logOperation(user, OperationType.READ, null, "Просмотр директории: " + directoryPath);
-        
-        return Files.list(validatedPath)
-                .map(path -> path.getFileName().toString())
-                .collect(Collectors.toList());
-    }
-
     public FileEntity getFileInfo(String filePath, User user) {
         Path validatedPath = securityService.validateAndNormalizePath(filePath);
-        return fileRepository.findByLocation(validatedPath.toString())
+        return metadataCache.findByLocation(validatedPath.toString())
                 .orElse(null);
     }
 
-    public List<FileEntity> getUserFiles(User user) {
-        return fileRepository.findByOwner(user);
+    /**
+     * Страница файлов пользователя в виде проекций
+     * @param page номер страницы, начиная с 0
+     */
+    @Transactional(readOnly = true)
+    public Slice<FileView> getUserFiles(User user, FileSort sort, int page, int pageSize) {
+        if (page < 0 || pageSize <= 0) {
+            throw new ValidationException("Некорректные параметры страницы: " + page + ", " + pageSize);
+        }
+        return fileRepository.findViewsByOwnerId(user.getId(), PageRequest.of(page, pageSize, sort.toSort()));
     }
 
-    private FileEntity findOrCreateFileEntity(String filePath, File file, User user) {
+    /**
+     * Потоковый обход всех файлов пользователя без загрузки списка в память
+     */
+    @Transactional(readOnly = true)
+    public void forEachUserFile(User user, FileSort sort, Consumer<FileView> action) {
+        try (Stream<FileView> files = fileRepository.streamViewsByOwnerId(user.getId(), sort.toSort())) {
+            files.forEach(action);
+        }
+    }
+
+    /**
+     * Поблочная перепроверка файла по сохраненным хешам блоков.
+     * Для файлов без хешей блоков сравнивается checksum целиком.
+     * @return индексы изменившихся блоков; пустой список - файл не изменился
+     */
+    @Transactional
+    public List<Integer> verifyFile(String filePath, User user) throws IOException {
         Path validatedPath = securityService.validateAndNormalizePath(filePath);
-        Optional<FileEntity> existing = fileRepository.findByLocation(validatedPath.toString());
+        if (!Files.exists(validatedPath)) {
+            throw new FileNotFoundException(filePath);
+        }
+        FileEntity fileEntity = metadataCache.findByLocation(validatedPath.toString())
+            .orElseThrow(() -> new ValidationException("Файл не зарегистрирован в базе данных: " + filePath));
+        
+        // Долгое хеширование не блокирует запись: при параллельном изменении файла
+        // проверка повторяется под блокировкой
+        List<Integer> changedChunks;
+        if (fileEntity.getChunkSize() != null && fileEntity.getChunkSize() == contentHasher.getChunkSize()) {
+            List<String> expected = chunkHashService.findHashes(fileEntity);
+            changedChunks = fileLockManager.optimisticRead(validatedPath,
+                () -> contentHasher.findChangedChunks(validatedPath, expected));
+        } else {
+            ContentHash actual = fileLockManager.optimisticRead(validatedPath,
+                () -> contentHasher.hashFile(validatedPath));
+            changedChunks = actual.checksum().equals(fileEntity.getChecksum()) ? List.of() : List.of(0);
+        }
+        
+        auditService.logOperation(user, OperationType.READ, fileEntity,
+            "Проверка целостности файла: " + filePath + " (изменено блоков: " + changedChunks.size() + ")");
+        return changedChunks;
+    }
+
+    private FileEntity findOrCreateFileEntity(Path validatedPath, File file, User user) {
+        Optional<FileEntity> existing = metadataCache.findByLocation(validatedPath.toString());
         
         if (existing.isPresent()) {
             return existing.get();
         }
         
-        FileEntity fileEntity = new FileEntity(file.getName(), validatedPath.toString(), user);
-        fileEntity.setSize(file.length());
-        fileEntity.setCreatedAt(LocalDateTime.now());
-        fileEntity.setFileType(getFileExtension(file.getName()));
-        fileEntity.setChecksum(calculateChecksum(file));
-        return fileRepository.save(fileEntity);
+        // Хеширование при регистрации подчиняется политике для операции чтения
+        HashPolicy.Mode hashMode = hashPolicy.modeFor(validatedPath, OperationType.READ);
+        ContentHash contentHash = hashMode == HashPolicy.Mode.INLINE ? calculateContentHash(file) : null;
+        Long crc32c = hashMode == HashPolicy.Mode.CRC_ONLY ? calculateCrc32c(file) : null;
+        
+        // Файл мог быть зарегистрирован параллельно - тогда возвращается существующая запись
+        String fileName = validatedPath.getFileName().toString();
+        FileEntity fileEntity = fileRepository.insertIfAbsent(fileName, LocalDateTime.now(), file.length(),
+            validatedPath.toString(), user.getId(), FileNameUtils.getExtension(fileName),
+            contentHash != null ? contentHash.checksum() : null, crc32c);
+        if (contentHash != null && contentHash.checksum() != null
+                && contentHash.checksum().equals(fileEntity.getChecksum())) {
+            chunkHashService.store(fileEntity, contentHash);
+        }
+        metadataCache.put(fileEntity);
+        if (hashMode == HashPolicy.Mode.DEFERRED) {
+            deferredHashService.schedule(fileEntity);
+        }
+        searchIndexService.scheduleIndex(fileEntity);
+        return fileEntity;
     }
 
-    private String calculateChecksum(File file) {
-        try {
-            MessageDigest md = MessageDigest.getInstance(FileManagerConstants.CHECKSUM_ALGORITHM);
-            try (FileInputStream fis = new FileInputStream(file);
-                 BufferedInputStream bis = new BufferedInputStream(fis)) {
-                byte[] buffer = new byte[FileManagerConstants.BUFFER_SIZE];
+    /**
+     * Частичная запись через FileChannel без усечения файла.
+     * Размер в метаданных обновляется по границам записи. Если у файла есть
+     * актуальные хеши блоков, пересчитываются только затронутые блоки и корень
+     * дерева; иначе SHA-256 вычисляется фоновой задачей. CRC32C при дозаписи
+     * продолжается без чтения старых данных.
+     * @param offset смещение записи; отрицательное - дозапись в конец
+     */
+    private void writePartial(String filePath, long offset, InputStream content, User user) throws IOException {
+        Path validatedPath = securityService.validateAndNormalizePath(filePath);
+        Files.createDirectories(validatedPath.getParent());
+        boolean append = offset < 0;
+
+        // Защита от Race Conditions: эксклюзивная блокировка на все время записи
+        try (FileLockManager.Handle lock = fileLockManager.lockWrite(validatedPath)) {
+            boolean fileExists = Files.exists(validatedPath);
+            OperationType operationType = fileExists ? OperationType.MODIFY : OperationType.CREATE;
+            HashPolicy.Mode hashMode = hashPolicy.modeFor(validatedPath, operationType);
+
+            // Общее с другими файлами содержимое копируется, а не меняется на месте
+            blobStoreService.prepareForPartialWrite(validatedPath);
+
+            long sizeBefore;
+            long start;
+            long end;
+            CRC32C crc = new CRC32C();
+            try (FileChannel channel = FileChannel.open(validatedPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE)) {
+                sizeBefore = channel.size();
+                start = append ? sizeBefore : offset;
+                byte[] chunk = new byte[FileManagerConstants.BUFFER_SIZE];
+                ByteBuffer buffer = ByteBuffer.wrap(chunk);
+                long position = start;
                 int bytesRead;
-                while ((bytesRead = bis.read(buffer)) != -1) {
-                    md.update(buffer, 0, bytesRead);
+                while ((bytesRead = content.read(chunk)) != -1) {
+                    // Лимит размера проверяется по мере поступления данных
+                    securityService.validateFileSize(Math.max(sizeBefore, position + bytesRead));
+                    crc.update(chunk, 0, bytesRead);
+                    buffer.clear().limit(bytesRead);
+                    while (buffer.hasRemaining()) {
+                        position += channel.write(buffer, position);
+                    }
+                }
+                end = position;
+                durabilityService.commitInPlace(channel, validatedPath);
+            }
+            if (!append) {
+                // Индекс строк дополняется только при дозаписи
+                lineIndexService.invalidate(validatedPath);
+            }
+            long size = Math.max(sizeBefore, end);
+
+            FileEntity fileEntity = metadataCache.findByLocation(validatedPath.toString()).orElse(null);
+            boolean metadataValid = fileEntity != null && fileEntity.getSize() != null
+                && fileEntity.getSize() == sizeBefore;
+            String previousChecksum = fileEntity != null ? fileEntity.getChecksum() : null;
+            String checksum = metadataValid ? updateChunkHashes(validatedPath, fileEntity, sizeBefore, start, end) : null;
+            Long crc32c = null;
+            if (append && metadataValid && fileEntity.getCrc32c() != null) {
+                crc32c = ChecksumUtils.combineCrc32c(fileEntity.getCrc32c(), crc.getValue(), end - start);
+            } else if (hashMode == HashPolicy.Mode.CRC_ONLY) {
+                crc32c = calculateCrc32c(validatedPath.toFile());
+            }
+
+            if (fileEntity == null) {
+                String fileName = validatedPath.getFileName().toString();
+                fileEntity = fileRepository.upsertByLocation(fileName, LocalDateTime.now(), size,
+                    validatedPath.toString(), user.getId(), FileNameUtils.getExtension(fileName), null, crc32c);
+            } else {
+                if (checksum == null) {
+                    // Хеши блоков больше не соответствуют содержимому
+                    chunkHashService.store(fileEntity, ContentHash.flat(null));
+                }
+                fileEntity.setSize(size);
+                fileEntity.setChecksum(checksum);
+                fileEntity.setCrc32c(crc32c);
+                // Как и upsert, отмечает запись менеджера: наблюдатель сравнивает с этим временем mtime файла
+                fileEntity.setCreatedAt(LocalDateTime.now());
+                fileEntity = fileRepository.save(fileEntity);
+            }
+            metadataCache.put(fileEntity);
+            if (checksum != null) {
+                checksumCache.put(validatedPath, Files.readAttributes(validatedPath, BasicFileAttributes.class), checksum);
+                blobStoreService.adopt(validatedPath, checksum);
+                if (crc32c == null) {
+                    // Запись по смещению не позволяет получить CRC32C из прежнего значения
+                    deferredHashService.scheduleCrc(fileEntity);
+                }
+            } else {
+                checksumCache.invalidate(validatedPath);
+                if (hashMode != HashPolicy.Mode.CRC_ONLY) {
+                    deferredHashService.schedule(fileEntity);
                 }
             }
-            byte[] hash = md.digest();
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hash) {
-                sb.append(String.format("%02x", b));
+            if (previousChecksum != null && !previousChecksum.equals(checksum)) {
+                blobStoreService.release(previousChecksum);
             }
-            return sb.toString();
+            searchIndexService.scheduleIndex(fileEntity);
+
+            // Логируем операцию
+            auditService.logOperation(user, operationType, fileEntity, (append
+                ? "Дозапись в файл: " + filePath
+                : "Запись в файл по смещению " + start + ": " + filePath) + " (" + (end - start) + " байт)");
+        }
+    }
+
+    /**
+     * Пересчитывает хеши блоков, затронутых записью диапазона [start, end),
+     * и корень дерева. Блоки между прежним концом файла и началом записи
+     * тоже пересчитываются: запись за концом файла заполняет их нулями.
+     * @return новая контрольная сумма или null, если актуальных хешей блоков нет
+     */
+    private String updateChunkHashes(Path validatedPath, FileEntity fileEntity, long sizeBefore,
+                                     long start, long end) throws IOException {
+        if (fileEntity.getChecksum() == null || fileEntity.getChunkSize() == null
+                || fileEntity.getChunkSize() != contentHasher.getChunkSize()) {
+            return null;
+        }
+        List<String> hashes = new ArrayList<>(chunkHashService.findHashes(fileEntity));
+        if (hashes.size() != contentHasher.chunkCount(sizeBefore)) {
+            return null;
+        }
+        if (end == start) {
+            return fileEntity.getChecksum();
+        }
+        int fromChunk = (int) (Math.min(start, sizeBefore) / contentHasher.getChunkSize());
+        List<String> updated = contentHasher.hashChunks(validatedPath, fromChunk, contentHasher.chunkCount(end));
+        for (int i = 0; i < updated.size(); i++) {
+            if (fromChunk + i < hashes.size()) {
+                hashes.set(fromChunk + i, updated.get(i));
+            } else {
+                hashes.add(updated.get(i));
+            }
+        }
+        chunkHashService.replaceRange(fileEntity, fromChunk, updated);
+        return ContentHasher.merkleRoot(hashes);
+    }
+
+    /**
+     * Контрольная сумма, которую перезаписывает операция. Нужна только для
+     * освобождения общего содержимого, поэтому без дедупликации БД не запрашивается.
+     */
+    private String findPreviousChecksum(Path validatedPath) {
+        if (!blobStoreService.isEnabled()) {
+            return null;
+        }
+        return metadataCache.findByLocation(validatedPath.toString())
+            .map(FileEntity::getChecksum)
+            .orElse(null);
+    }
+
+    private Long calculateCrc32c(File file) {
+        try {
+            return contentHasher.crc32c(file.toPath());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private ContentHash calculateContentHash(File file) {
+        try {
+            // Неизмененный файл не перечитывается: достаточно сверить атрибуты.
+            // Кэш хранит только корень дерева, без хешей блоков, поэтому для больших
+            // файлов попадание не используется - иначе store() удалил бы хеши блоков
+            Path path = file.toPath();
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!contentHasher.isTreeSized(attributes.size())) {
+                String cached = checksumCache.get(path, attributes);
+                if (cached != null) {
+                    return ContentHash.flat(cached);
+                }
+            }
+            
+            // Большие файлы хешируются параллельно по блокам
+            ContentHash contentHash = contentHasher.hashFile(path);
+            
+            // Кэшируем только если файл не менялся во время хеширования
+            BasicFileAttributes after = Files.readAttributes(path, BasicFileAttributes.class);
+            if (after.size() == attributes.size()
+                    && after.lastModifiedTime().equals(attributes.lastModifiedTime())) {
+                checksumCache.put(path, after, contentHash.checksum());
+            }
+            return contentHash;
         } catch (Exception e) {
             return null;
         }
     }
 
-    private String getFileExtension(String filename) {
-        int lastDot = filename.lastIndexOf('.');
-        return lastDot > 0 ? filename.substring(lastDot + 1) : "";
+    /**
+     * Копирует содержимое канала через transferTo (sendfile/copy_file_range в ядре).
+     * @return количество скопированных байт
+     */
+    private long transferContent(FileChannel source, FileChannel target) throws IOException {
+        long size = source.size();
+        long position = 0;
+        while (position < size) {
+            long transferred = source.transferTo(position, size - position, target);
+            if (transferred <= 0) {
+                break;
+            }
+            position += transferred;
+        }
+        return position;
+    }
+
+    private void validateRange(long offset, long length) {
+        if (offset < 0) {
+            throw new ValidationException("Смещение не может быть отрицательным: " + offset);
+        }
+        if (length < 0) {
+            throw new ValidationException("Длина диапазона не может быть отрицательной: " + length);
+        }
     }
 }
 
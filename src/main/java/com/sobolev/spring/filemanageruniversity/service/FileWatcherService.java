@@ -0,0 +1,367 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.entity.FileEntity;
+import com.sobolev.spring.filemanageruniversity.entity.OperationType;
+import com.sobolev.spring.filemanageruniversity.entity.User;
+import com.sobolev.spring.filemanageruniversity.repository.FileRepository;
+import com.sobolev.spring.filemanageruniversity.repository.UserRepository;
+import com.sobolev.spring.filemanageruniversity.util.FileNameUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фоновая синхронизация метаданных с файловой системой через WatchService.
+ * Дерево базовой директории регистрируется рекурсивно; события по одному пути
+ * копятся, пока путь не затихнет на время debounce, после чего запись
+ * file_entity создается, обновляется или удаляется одним пакетом.
+ * Контрольная сумма вычисляется DeferredHashService, а не в запросе пользователя.
+ * Файлы, появившиеся не через файловый менеджер, закрепляются за системным пользователем.
+ * Если пакет не удалось зафиксировать, пути обрабатываются по одному: путь,
+ * обработка которого не удалась maxAttempts раз, больше не повторяется.
+ */
+@Service
+public class FileWatcherService {
+
+    private final SecurityService securityService;
+    private final FileRepository fileRepository;
+    private final UserRepository userRepository;
+    private final UserService userService;
+    private final FileMetadataCache metadataCache;
+    private final ChecksumCache checksumCache;
+    private final BlobStoreService blobStoreService;
+    private final HashPolicy hashPolicy;
+    private final ContentHasher contentHasher;
+    private final DeferredHashService deferredHashService;
+    private final SearchIndexService searchIndexService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${filemanager.watcher.enabled:false}")
+    private boolean enabled;
+
+    @Value("${filemanager.watcher.debounce.ms:500}")
+    private long debounceMs; // Путь обрабатывается после паузы в событиях
+
+    @Value("${filemanager.watcher.owner:system}")
+    private String ownerUsername; // Владелец файлов, появившихся вне файлового менеджера
+
+    @Value("${filemanager.watcher.max.attempts:10}")
+    private int maxAttempts; // Попыток синхронизировать путь, после которых он пропускается
+
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    // Все зарегистрированные директории; ключ наблюдения удаленной директории уже недействителен
+    private final Set<Path> knownDirectories = ConcurrentHashMap.newKeySet();
+    private final Map<Path, Long> pending = new ConcurrentHashMap<>();
+    // Неудачные попытки синхронизации по пути; используется только потоком синхронизации
+    private final Map<Path, Integer> failedAttempts = new HashMap<>();
+
+    private WatchService watchService;
+    private Thread watcherThread;
+    private ScheduledExecutorService syncExecutor;
+    private Long ownerId;
+
+    @Autowired
+    public FileWatcherService(SecurityService securityService, FileRepository fileRepository,
+                              UserRepository userRepository, UserService userService,
+                              FileMetadataCache metadataCache, ChecksumCache checksumCache,
+                              BlobStoreService blobStoreService, HashPolicy hashPolicy,
+                              ContentHasher contentHasher, DeferredHashService deferredHashService,
+                              SearchIndexService searchIndexService, TransactionTemplate transactionTemplate) {
+        this.securityService = securityService;
+        this.fileRepository = fileRepository;
+        this.userRepository = userRepository;
+        this.userService = userService;
+        this.metadataCache = metadataCache;
+        this.checksumCache = checksumCache;
+        this.blobStoreService = blobStoreService;
+        this.hashPolicy = hashPolicy;
+        this.contentHasher = contentHasher;
+        this.deferredHashService = deferredHashService;
+        this.searchIndexService = searchIndexService;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        securityService.ensureBaseDirectoryExists();
+        ownerId = resolveOwner().getId();
+        watchService = FileSystems.getDefault().newWatchService();
+        // Существующие файлы не перебираются: начальную индексацию выполняет отдельный процесс
+        registerTree(securityService.getBaseDirectory(), false);
+
+        watcherThread = new Thread(this::watchLoop, "file-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+
+        syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "file-watcher-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, debounceMs / 2);
+        syncExecutor.scheduleWithFixedDelay(this::syncSettled, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException, InterruptedException {
+        if (watchService == null) {
+            return;
+        }
+        watchService.close();
+        watcherThread.join();
+        syncExecutor.shutdown();
+        syncExecutor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    private User resolveOwner() {
+        // Системный пользователь создается со случайным паролем - войти под ним нельзя
+        return userRepository.findByUsername(ownerUsername)
+            .orElseGet(() -> userService.registerUser(ownerUsername, UUID.randomUUID().toString()));
+    }
+
+    /**
+     * @param touchFiles поставить в очередь уже существующие файлы - нужно для новых
+     *                   директорий, файлы в которых появились до регистрации
+     */
+    private void registerTree(Path root, boolean touchFiles) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirectories.put(key, dir);
+                knownDirectories.add(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (touchFiles && attributes.isRegularFile()) {
+                    touch(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path directory = watchedDirectories.get(key);
+            if (directory != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    handleEvent(directory, event);
+                }
+            }
+            if (!key.reset()) {
+                // Директория удалена или недоступна
+                watchedDirectories.remove(key);
+                if (directory != null) {
+                    touch(directory);
+                }
+            }
+        }
+    }
+
+    private void handleEvent(Path directory, WatchEvent<?> event) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            // События потеряны - перепроверяем всю директорию
+            rescan(directory);
+            return;
+        }
+        Path path = directory.resolve((Path) event.context());
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            try {
+                registerTree(path, true);
+            } catch (IOException e) {
+                // Директория уже удалена - обработаем как обычный путь
+            }
+        }
+        touch(path);
+    }
+
+    private void rescan(Path directory) {
+        try (var entries = Files.list(directory)) {
+            entries.forEach(this::touch);
+        } catch (IOException e) {
+            touch(directory);
+        }
+    }
+
+    private void touch(Path path) {
+        Path name = path.getFileName();
+        if (name != null && FileNameUtils.isTemporary(name.toString())) {
+            // Временные файлы самого менеджера исчезают при фиксации записи
+            return;
+        }
+        pending.put(path, System.nanoTime());
+    }
+
+    /**
+     * Обрабатывает пути, по которым не было событий дольше debounce
+     */
+    private void syncSettled() {
+        long settledBefore = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(debounceMs);
+        List<Path> settled = new ArrayList<>();
+        pending.forEach((path, lastEvent) -> {
+            if (lastEvent - settledBefore <= 0 && pending.remove(path, lastEvent)) {
+                settled.add(path);
+            }
+        });
+        if (settled.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (Path path : settled) {
+                    syncPath(path);
+                }
+            });
+            settled.forEach(failedAttempts::remove);
+            return;
+        } catch (RuntimeException e) {
+            // Пакет откатился - пути обрабатываются по одному, чтобы один путь не блокировал остальные
+        }
+        List<Path> failed = new ArrayList<>();
+        for (Path path : settled) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> syncPath(path));
+                failedAttempts.remove(path);
+            } catch (RuntimeException e) {
+                failed.add(path);
+            }
+        }
+        if (failed.size() == settled.size() && settled.size() > 1) {
+            // Не удалось ни одно изменение - вероятно, БД недоступна; попытки не учитываются
+            failed.forEach(this::touch);
+            return;
+        }
+        for (Path path : failed) {
+            if (failedAttempts.merge(path, 1, Integer::sum) < maxAttempts) {
+                touch(path);
+            } else {
+                failedAttempts.remove(path);
+            }
+        }
+    }
+
+    private void syncPath(Path path) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            removeMissing(path);
+            return;
+        } catch (IOException e) {
+            return;
+        }
+        if (!attributes.isRegularFile()) {
+            return;
+        }
+
+        String location = path.toString();
+        FileEntity existing = metadataCache.findByLocation(location).orElse(null);
+        if (existing != null && existing.getSize() != null && existing.getSize() == attributes.size()
+                && existing.getCreatedAt() != null
+                && !modifiedAfter(attributes, existing.getCreatedAt())) {
+            // Событие от собственной операции файлового менеджера - метаданные актуальны
+            return;
+        }
+
+        OperationType operationType = existing != null ? OperationType.MODIFY : OperationType.CREATE;
+        HashPolicy.Mode hashMode = hashPolicy.modeFor(path, operationType);
+        Long crc32c = null;
+        if (hashMode == HashPolicy.Mode.CRC_ONLY) {
+            try {
+                crc32c = contentHasher.crc32c(path);
+            } catch (IOException e) {
+                return;
+            }
+        }
+        String fileName = path.getFileName().toString();
+        FileEntity fileEntity = fileRepository.upsertByLocation(fileName, LocalDateTime.now(), attributes.size(),
+            location, ownerId, FileNameUtils.getExtension(fileName), null, crc32c);
+        checksumCache.invalidate(path);
+        metadataCache.put(fileEntity);
+        if (existing != null && existing.getChecksum() != null) {
+            blobStoreService.release(existing.getChecksum());
+        }
+        if (hashMode != HashPolicy.Mode.CRC_ONLY) {
+            deferredHashService.schedule(fileEntity);
+        }
+        searchIndexService.scheduleIndex(fileEntity);
+    }
+
+    private void removeMissing(Path path) {
+        checksumCache.invalidate(path);
+        FileEntity existing = metadataCache.findByLocation(path.toString()).orElse(null);
+        if (existing != null) {
+            metadataCache.evict(path.toString());
+            fileRepository.delete(existing);
+            fileRepository.flush();
+            blobStoreService.release(existing.getChecksum());
+            searchIndexService.scheduleRemove(path);
+            return;
+        }
+        if (!knownDirectories.remove(path)) {
+            return;
+        }
+        // Удаленная директория: записи всех файлов под ней
+        knownDirectories.removeIf(directory -> directory.startsWith(path));
+        int removed = fileRepository.deleteByLocationPrefix(path + File.separator);
+        searchIndexService.scheduleRemoveTree(path);
+        if (removed > 0) {
+            metadataCache.clear();
+        }
+    }
+
+    private static boolean modifiedAfter(BasicFileAttributes attributes, LocalDateTime registeredAt) {
+        return attributes.lastModifiedTime().toInstant()
+            .isAfter(registeredAt.atZone(ZoneId.systemDefault()).toInstant());
+    }
+}
@@ -0,0 +1,92 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.entity.OperationType;
+import com.sobolev.spring.filemanageruniversity.exception.ValidationException;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Политика выбора хеша для файла.
+ * CRC32C считается при каждой записи всегда - это быстрый признак изменения.
+ * SHA-256 (или дерево хешей) считается сразу, откладывается в фоновую задачу
+ * для указанных типов операций или не считается вовсе для путей из списка CRC-only.
+ */
+@Component
+public class HashPolicy {
+
+    public enum Mode {
+        INLINE,   // SHA-256 вычисляется в ходе операции
+        DEFERRED, // SHA-256 вычисляется фоновой задачей после фиксации транзакции
+        CRC_ONLY  // только CRC32C
+    }
+
+    private final SecurityService securityService;
+
+    @Value("${filemanager.hash.sha256.deferred.operations:}")
+    private String deferredOperationsProperty; // Например: MODIFY,READ
+
+    @Value("${filemanager.hash.crc.only.paths:}")
+    private String crcOnlyPathsProperty; // Glob-шаблоны относительно базовой директории, например: **.log
+
+    private Set<OperationType> deferredOperations;
+    private List<PathMatcher> crcOnlyMatchers;
+
+    @Autowired
+    public HashPolicy(SecurityService securityService) {
+        this.securityService = securityService;
+    }
+
+    @PostConstruct
+    public void init() {
+        deferredOperations = EnumSet.noneOf(OperationType.class);
+        for (String name : splitList(deferredOperationsProperty)) {
+            try {
+                deferredOperations.add(OperationType.valueOf(name.toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new ValidationException("Неизвестный тип операции в политике хеширования: " + name);
+            }
+        }
+        crcOnlyMatchers = new ArrayList<>();
+        for (String pattern : splitList(crcOnlyPathsProperty)) {
+            crcOnlyMatchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+        }
+    }
+
+    /**
+     * @param path нормализованный абсолютный путь внутри базовой директории
+     */
+    public Mode modeFor(Path path, OperationType operationType) {
+        if (!crcOnlyMatchers.isEmpty()) {
+            Path relative = securityService.getBaseDirectory().relativize(path);
+            for (PathMatcher matcher : crcOnlyMatchers) {
+                if (matcher.matches(relative)) {
+                    return Mode.CRC_ONLY;
+                }
+            }
+        }
+        return deferredOperations.contains(operationType) ? Mode.DEFERRED : Mode.INLINE;
+    }
+
+    private static List<String> splitList(String value) {
+        List<String> result = new ArrayList<>();
+        if (value == null) {
+            return result;
+        }
+        for (String part : value.split(",")) {
+            if (!part.trim().isEmpty()) {
+                result.add(part.trim());
+            }
+        }
+        return result;
+    }
+}
@@ -21,10 +21,12 @@ public class JsonXmlService {
     private final ObjectMapper jsonMapper;
     private final XmlMapper xmlMapper;
     private final SecurityService securityService;
+    private final BlobStoreService blobStoreService;
 
     @Autowired
-    public JsonXmlService(SecurityService securityService) {
+    public JsonXmlService(SecurityService securityService, BlobStoreService blobStoreService) {
         this.securityService = securityService;
+        this.blobStoreService = blobStoreService;
         
         // Настройка JSON mapper с защитой от небезопасной десериализации
         this.jsonMapper = new ObjectMapper();
@@ -82,6 +84,7 @@ public class JsonXmlService {
         
         // Создаем директорию, если не существует
         Files.createDirectories(validatedPath.getParent());
+        blobStoreService.prepareForOverwrite(validatedPath);
         
         // Безопасная сериализация
         jsonMapper.writerWithDefaultPrettyPrinter().writeValue(validatedPath.toFile(), data);
@@ -165,6 +168,7 @@ public class JsonXmlService {
         
         // Создаем директорию, если не существует
         Files.createDirectories(validatedPath.getParent());
+        blobStoreService.prepareForOverwrite(validatedPath);
         
         // Безопасная сериализация
         xmlMapper.writerWithDefaultPrettyPrinter().writeValue(validatedPath.toFile(), data);
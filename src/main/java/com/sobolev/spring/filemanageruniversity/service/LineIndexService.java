@@ -0,0 +1,426 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.config.FileManagerConstants;
+import com.sobolev.spring.filemanageruniversity.dto.FollowChunk;
+import com.sobolev.spring.filemanageruniversity.dto.LinePage;
+import com.sobolev.spring.filemanageruniversity.entity.OperationType;
+import com.sobolev.spring.filemanageruniversity.entity.User;
+import com.sobolev.spring.filemanageruniversity.exception.FileNotFoundException;
+import com.sobolev.spring.filemanageruniversity.exception.ValidationException;
+import com.sobolev.spring.filemanageruniversity.util.ChecksumUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Постраничный просмотр больших текстовых файлов по номерам строк.
+ * Для файла строится индекс - массив long со смещениями начал строк, который
+ * хранится в файле-спутнике в filemanager.lineindex.directory. Смещение строки N
+ * читается из спутника одним позиционным чтением, поэтому переход к любой строке
+ * не требует чтения и декодирования предшествующих данных.
+ * Индекс действителен, пока совпадают размер и время изменения файла. Если файл
+ * вырос, а CRC32C последних байт проиндексированной части не изменился, файл
+ * считается дописанным и индекс дополняется только новыми строками; любое другое
+ * изменение приводит к полному перестроению. Запись по смещению с ростом файла
+ * по хвосту не обнаруживается, поэтому FileService удаляет индекс при записи
+ * не в конец файла (invalidate).
+ */
+@Service
+public class LineIndexService {
+
+    // Формат спутника: magic, версия, проиндексированный размер, время изменения,
+    // CRC32C хвоста проиндексированной части, число смещений, затем смещения
+    private static final int MAGIC = 0x4C494458; // "LIDX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+
+    private static final int SCAN_BUFFER_SIZE = 256 * 1024;
+    private static final int OFFSETS_PER_WRITE = 8192;
+    private static final int FINGERPRINT_SIZE = 4096;
+    private static final int MAX_FOLLOW_BYTES = 1024 * 1024;
+    private static final int BUILD_LOCK_STRIPES = 64;
+
+    private final SecurityService securityService;
+    private final AuditService auditService;
+    private final FileLockManager fileLockManager;
+
+    // Построение индекса одного файла не выполняется параллельно; под блокировкой
+    // читается и пишется файл-спутник, поэтому ReentrantLock, а не монитор
+    private final ReentrantLock[] buildLocks = new ReentrantLock[BUILD_LOCK_STRIPES];
+
+    @Value("${filemanager.lineindex.directory:./line-index}")
+    private String indexDirectory;
+
+    @Value("${filemanager.lineindex.max.lines:10000}")
+    private int maxLines; // Максимум строк за один запрос
+
+    @Autowired
+    public LineIndexService(SecurityService securityService, AuditService auditService,
+                            FileLockManager fileLockManager) {
+        this.securityService = securityService;
+        this.auditService = auditService;
+        this.fileLockManager = fileLockManager;
+        for (int i = 0; i < buildLocks.length; i++) {
+            buildLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Строки с fromLine по toLine включительно (нумерация с 1).
+     * Диапазон за концом файла усекается.
+     */
+    public LinePage readLines(String filePath, long fromLine, long toLine, User user) throws IOException {
+        if (fromLine < 1 || toLine < fromLine) {
+            throw new ValidationException("Некорректный диапазон строк: " + fromLine + "-" + toLine);
+        }
+        if (toLine - fromLine >= maxLines) {
+            throw new ValidationException("За один раз можно показать не более " + maxLines + " строк");
+        }
+        Path validatedPath = validateFile(filePath);
+        LinePage page = read(validatedPath, fromLine, toLine, -1);
+        auditService.logOperation(user, OperationType.READ, null,
+            "Просмотр строк " + fromLine + "-" + toLine + " файла: " + filePath);
+        return page;
+    }
+
+    /**
+     * Последние lineCount строк файла - начало режима слежения
+     */
+    public LinePage tail(String filePath, int lineCount, User user) throws IOException {
+        if (lineCount < 0 || lineCount > maxLines) {
+            throw new ValidationException("Число строк должно быть от 0 до " + maxLines);
+        }
+        Path validatedPath = validateFile(filePath);
+        LinePage page = read(validatedPath, -1, -1, lineCount);
+        auditService.logOperation(user, OperationType.READ, null, "Слежение за файлом: " + filePath);
+        return page;
+    }
+
+    /**
+     * Полные строки, дописанные после position. Незавершенная последняя строка
+     * остается до следующего опроса. Опросы не журналируются - в журнал
+     * попадает начало слежения (tail).
+     * @param fileKey идентификатор файла из предыдущего ответа: если путь теперь
+     *                указывает на другой файл (ротация), чтение начинается с начала,
+     *                даже когда новый файл не короче позиции
+     */
+    public FollowChunk follow(String filePath, long position, String fileKey, User user) throws IOException {
+        if (position < 0) {
+            throw new ValidationException("Смещение не может быть отрицательным: " + position);
+        }
+        Path validatedPath = validateFile(filePath);
+        try (FileLockManager.Handle lock = fileLockManager.lockRead(validatedPath);
+             FileChannel channel = FileChannel.open(validatedPath, StandardOpenOption.READ)) {
+            String currentKey = fileKeyOf(validatedPath);
+            long size = channel.size();
+            boolean replaced = fileKey != null && currentKey != null && !fileKey.equals(currentKey);
+            boolean truncated = replaced || size < position;
+            long start = truncated ? 0 : position;
+            int length = (int) Math.min(size - start, MAX_FOLLOW_BYTES);
+            if (length == 0) {
+                return new FollowChunk(List.of(), start, truncated, currentKey);
+            }
+            byte[] data = readBytes(channel, start, length);
+            int lastNewline = lastIndexOf(data, (byte) '\n');
+            if (lastNewline < 0 && length < MAX_FOLLOW_BYTES) {
+                return new FollowChunk(List.of(), start, truncated, currentKey);
+            }
+            // Слишком длинная строка без перевода выдается частями
+            int consumed = lastNewline < 0 ? length : lastNewline + 1;
+            return new FollowChunk(splitLines(data, consumed), start + consumed, truncated, currentKey);
+        }
+    }
+
+    /**
+     * Удаляет индекс файла. Вызывается под блокировкой записи файла, когда
+     * содержимое изменено не дозаписью в конец
+     */
+    public void invalidate(Path path) throws IOException {
+        ReentrantLock buildLock = buildLockFor(path);
+        buildLock.lock();
+        try {
+            Files.deleteIfExists(sidecarPath(path));
+        } finally {
+            buildLock.unlock();
+        }
+    }
+
+    private Path validateFile(String filePath) {
+        Path validatedPath = securityService.validateAndNormalizePath(filePath);
+        if (!Files.exists(validatedPath)) {
+            throw new FileNotFoundException(filePath);
+        }
+        if (!Files.isRegularFile(validatedPath)) {
+            throw new ValidationException("Указанный путь не является файлом: " + filePath);
+        }
+        return validatedPath;
+    }
+
+    /**
+     * @param tailLines при неотрицательном значении читаются последние tailLines строк
+     */
+    private LinePage read(Path path, long fromLine, long toLine, int tailLines) throws IOException {
+        try (FileLockManager.Handle lock = fileLockManager.lockRead(path);
+             FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            String fileKey = fileKeyOf(path);
+            long total;
+            long start;
+            long end;
+            // Смещения читаются под той же блокировкой, что и перестроение спутника
+            ReentrantLock buildLock = buildLockFor(path);
+            buildLock.lock();
+            try (LineIndex index = openIndex(path, channel)) {
+                total = index.lineCount();
+                if (tailLines >= 0) {
+                    fromLine = Math.max(1, total - tailLines + 1);
+                    toLine = total;
+                }
+                if (fromLine > total || toLine < fromLine) {
+                    return new LinePage(fromLine, List.of(), total, index.indexedSize, fileKey);
+                }
+                long lastLine = Math.min(toLine, total);
+                start = index.lineStart(fromLine - 1);
+                end = lastLine < index.count ? index.lineStart(lastLine) : index.indexedSize;
+            } finally {
+                buildLock.unlock();
+            }
+            securityService.validateFileSize(end - start);
+            byte[] data = readBytes(channel, start, (int) (end - start));
+            return new LinePage(fromLine, splitLines(data, data.length), total, end, fileKey);
+        }
+    }
+
+    private ReentrantLock buildLockFor(Path path) {
+        return buildLocks[Math.floorMod(path.hashCode(), buildLocks.length)];
+    }
+
+    private static String fileKeyOf(Path path) throws IOException {
+        Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        return fileKey != null ? fileKey.toString() : null;
+    }
+
+    /**
+     * Открывает индекс файла, при необходимости дополняя или перестраивая его.
+     * Вызывается под блокировкой чтения файла и блокировкой построения индекса.
+     */
+    private LineIndex openIndex(Path path, FileChannel channel) throws IOException {
+        long size = channel.size();
+        long modified = Files.getLastModifiedTime(path).toMillis();
+        Path sidecar = sidecarPath(path);
+        Files.createDirectories(sidecar.getParent());
+        FileChannel indexChannel = FileChannel.open(sidecar, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            LineIndex index = readHeader(indexChannel);
+            if (index != null && index.indexedSize == size && index.modified == modified) {
+                return index;
+            }
+            // Время изменения другое, а файл не вырос - он переписан, дополнять нечего
+            if (index == null || index.indexedSize >= size
+                    || index.fingerprint != fingerprint(channel, index.indexedSize)) {
+                // Индекса нет или файл переписан - строим заново; без заголовка
+                // прерванное построение не будет принято за действительный индекс
+                indexChannel.truncate(0);
+                index = new LineIndex(indexChannel, 0, 0, 0, 0);
+                index.append(new long[] {0}, 1);
+            }
+            extend(index, channel, size);
+            index.indexedSize = size;
+            index.modified = modified;
+            index.fingerprint = fingerprint(channel, size);
+            index.writeHeader();
+            return index;
+        } catch (IOException | RuntimeException e) {
+            indexChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Дополняет индекс смещениями строк, начинающихся в [indexedSize, size)
+     */
+    private void extend(LineIndex index, FileChannel channel, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long[] pending = new long[OFFSETS_PER_WRITE];
+        int pendingCount = 0;
+        long position = index.indexedSize;
+        while (position < size) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), size - position));
+            int n = channel.read(buffer, position);
+            if (n <= 0) {
+                break;
+            }
+            byte[] data = buffer.array();
+            for (int i = 0; i < n; i++) {
+                if (data[i] == '\n') {
+                    pending[pendingCount++] = position + i + 1;
+                    if (pendingCount == pending.length) {
+                        index.append(pending, pendingCount);
+                        pendingCount = 0;
+                    }
+                }
+            }
+            position += n;
+        }
+        index.append(pending, pendingCount);
+    }
+
+    private LineIndex readHeader(FileChannel indexChannel) throws IOException {
+        if (indexChannel.size() < HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && indexChannel.read(header, header.position()) > 0) {
+            // Читаем заголовок целиком
+        }
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            return null;
+        }
+        LineIndex index = new LineIndex(indexChannel, header.getLong(), header.getLong(),
+            header.getLong(), header.getLong());
+        // Запись прервалась до обновления заголовка или спутник поврежден
+        if (index.count < 1 || indexChannel.size() < HEADER_SIZE + index.count * Long.BYTES) {
+            return null;
+        }
+        return index;
+    }
+
+    /**
+     * CRC32C последних байт перед end - признак того, что файл только дописывался
+     */
+    private static long fingerprint(FileChannel channel, long end) throws IOException {
+        int length = (int) Math.min(FINGERPRINT_SIZE, end);
+        CRC32C crc = new CRC32C();
+        crc.update(readBytes(channel, end - length, length));
+        return crc.getValue();
+    }
+
+    private Path sidecarPath(Path path) {
+        byte[] hash = ChecksumUtils.newDigest().digest(path.toString().getBytes(StandardCharsets.UTF_8));
+        String name = ChecksumUtils.toHex(hash);
+        return Paths.get(indexDirectory).toAbsolutePath().normalize()
+            .resolve(name.substring(0, 2)).resolve(name + ".idx");
+    }
+
+    private static byte[] readBytes(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                break;
+            }
+        }
+        return buffer.position() == length ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static List<String> splitLines(byte[] data, int length) {
+        Charset charset = Charset.forName(FileManagerConstants.DEFAULT_CHARSET);
+        List<String> lines = new ArrayList<>();
+        int lineStart = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i == length && lineStart == length) {
+                break;
+            }
+            if (i == length || data[i] == '\n') {
+                int end = i > lineStart && data[i - 1] == '\r' ? i - 1 : i;
+                lines.add(new String(data, lineStart, end - lineStart, charset));
+                lineStart = i + 1;
+            }
+        }
+        return lines;
+    }
+
+    private static int lastIndexOf(byte[] data, byte value) {
+        for (int i = data.length - 1; i >= 0; i--) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Открытый файл-спутник с заголовком индекса
+     */
+    private static final class LineIndex implements Closeable {
+
+        private final FileChannel channel;
+        private long indexedSize;
+        private long modified;
+        private long fingerprint;
+        private long count;
+
+        private LineIndex(FileChannel channel, long indexedSize, long modified, long fingerprint, long count) {
+            this.channel = channel;
+            this.indexedSize = indexedSize;
+            this.modified = modified;
+            this.fingerprint = fingerprint;
+            this.count = count;
+        }
+
+        /**
+         * Число строк: последнее смещение, равное размеру файла, - это
+         * позиция после завершающего перевода строки, а не начало строки
+         */
+        long lineCount() throws IOException {
+            return lineStart(count - 1) == indexedSize ? count - 1 : count;
+        }
+
+        long lineStart(long line) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, HEADER_SIZE + line * Long.BYTES + buffer.position()) < 0) {
+                    throw new IOException("Индекс строк поврежден");
+                }
+            }
+            return buffer.getLong(0);
+        }
+
+        void append(long[] offsets, int length) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(length * Long.BYTES);
+            buffer.asLongBuffer().put(offsets, 0, length);
+            long position = HEADER_SIZE + count * Long.BYTES;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            count += length;
+        }
+
+        void writeHeader() throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC).putInt(VERSION)
+                .putLong(indexedSize).putLong(modified).putLong(fingerprint).putLong(count)
+                .flip();
+            long position = 0;
+            while (header.hasRemaining()) {
+                position += channel.write(header, position);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.exception.ValidationException;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Движок чтения больших файлов.
+ * Потоковое чтение диапазона идет через FileChannel.map окнами фиксированного
+ * размера: данные копируются из page cache прямо в буфер получателя без
+ * промежуточных буферов в куче. Окна не освобождаются явно - после перехода
+ * к следующему окну отображение становится недостижимым и освобождается
+ * сборщиком мусора. Небольшие диапазоны и чтение в строку используют
+ * позиционное чтение канала: строке все равно нужна полная копия байтов.
+ */
+@Component
+public class MappedFileReader {
+
+    // Минимальный размер окна - одна страница
+    private static final long MIN_WINDOW_SIZE = 4096;
+
+    @Value("${filemanager.mmap.window.size:67108864}")
+    private long windowSize; // 64MB по умолчанию
+
+    @Value("${filemanager.mmap.threshold:1048576}")
+    private long mmapThreshold; // Файлы меньше 1MB читаются через буфер
+
+    @PostConstruct
+    public void validateConfiguration() {
+        if (windowSize < MIN_WINDOW_SIZE) {
+            throw new ValidationException("Размер окна отображения должен быть не меньше " + MIN_WINDOW_SIZE + " байт");
+        }
+        if (mmapThreshold < 0) {
+            throw new ValidationException("Порог отображения файла не может быть отрицательным");
+        }
+    }
+
+    public boolean shouldMap(long length) {
+        return length >= mmapThreshold;
+    }
+
+    /**
+     * Поток чтения диапазона файла: большие диапазоны читаются из отображенных
+     * окон, небольшие - позиционным чтением канала. Поток владеет каналом и
+     * блокировкой и освобождает их при закрытии.
+     */
+    public InputStream openStream(FileChannel channel, Closeable lock, long offset, long length) {
+        return shouldMap(length)
+            ? new MappedRangeInputStream(channel, lock, offset, length, windowSize)
+            : new ChannelRangeInputStream(channel, lock, offset, length);
+    }
+
+    /**
+     * Декодирует диапазон файла в строку. Байты читаются позиционным чтением
+     * канала в один массив, из которого строка строится без промежуточного
+     * CharBuffer: в куче одновременно находятся только байты диапазона и результат.
+     */
+    public String readString(FileChannel channel, long offset, long length, Charset charset) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new ValidationException("Диапазон слишком велик для чтения в строку: " + length + " байт");
+        }
+        return new String(readBytes(channel, offset, (int) length), charset);
+    }
+
+    private byte[] readBytes(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                break;
+            }
+            position += n;
+        }
+        if (buffer.hasRemaining()) {
+            // Файл оказался короче ожидаемого - возвращаем только прочитанное
+            byte[] truncated = new byte[buffer.position()];
+            System.arraycopy(buffer.array(), 0, truncated, 0, truncated.length);
+            return truncated;
+        }
+        return buffer.array();
+    }
+}
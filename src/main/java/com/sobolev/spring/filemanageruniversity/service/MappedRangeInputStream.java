@@ -0,0 +1,122 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Поток чтения диапазона файла через отображенные окна FileChannel.map.
+ * Поток держит ссылку не больше чем на одно окно; предыдущие окна освобождает
+ * сборщик мусора. Явного освобождения нет, поэтому обращение к окну после
+ * закрытия потока не может обратиться к снятому отображению. Данные копируются из page cache
+ * прямо в буфер вызывающего кода без системного вызова read на каждую порцию.
+ * Блокировка и канал освобождаются при закрытии потока.
+ */
+final class MappedRangeInputStream extends InputStream {
+
+    private final FileChannel channel;
+    private final Closeable lock;
+    private final long windowSize;
+    private final long end;
+    private long position;
+    private long mark;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private boolean closed;
+
+    MappedRangeInputStream(FileChannel channel, Closeable lock, long offset, long length, long windowSize) {
+        this.channel = channel;
+        this.lock = lock;
+        this.windowSize = windowSize;
+        this.position = offset;
+        this.mark = offset;
+        this.end = offset + length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int n = read(single, 0, 1);
+        return n == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= end) {
+            return -1;
+        }
+        MappedByteBuffer current = windowFor(position);
+        int offsetInWindow = (int) (position - windowStart);
+        int n = (int) Math.min(len, Math.min(current.limit() - offsetInWindow, end - position));
+        current.get(offsetInWindow, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        ensureOpen();
+        long skipped = Math.max(0, Math.min(n, end - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, end - position));
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        mark = position;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        ensureOpen();
+        position = mark;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        window = null;
+        try {
+            channel.close();
+        } finally {
+            if (lock != null) {
+                lock.close();
+            }
+        }
+    }
+
+    private MappedByteBuffer windowFor(long offset) throws IOException {
+        if (window != null && offset >= windowStart && offset < windowStart + window.limit()) {
+            return window;
+        }
+        windowStart = offset;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(windowSize, end - offset));
+        return window;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Поток уже закрыт");
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.exception.ValidationException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Выполнение операций FileService, ZipService и JsonXmlService параллельно
+ * на виртуальных потоках. Блокирующий ввод-вывод и JDBC не занимают потоки ОС,
+ * поэтому одновременно могут выполняться тысячи операций. Нагрузка на общие
+ * ресурсы ограничивается семафорами: DB - по размеру пула соединений,
+ * DISK - по числу одновременных обращений к диску.
+ * Точки входа FileService, ZipService и JsonXmlService вызываются через call/run
+ * с набором ресурсов, которые использует операция.
+ */
+@Component
+public class OperationExecutor {
+
+    public enum Resource {
+        DB,
+        DISK
+    }
+
+    /**
+     * Операция без результата
+     */
+    @FunctionalInterface
+    public interface Action {
+        void run() throws Exception;
+    }
+
+    @Value("${filemanager.executor.virtual:true}")
+    private boolean virtualThreads; // false - пул потоков ОС фиксированного размера
+
+    @Value("${filemanager.executor.platform.threads:0}")
+    private int platformThreads; // 0 - по числу процессоров
+
+    @Value("${filemanager.executor.db.permits:${spring.datasource.hikari.maximum-pool-size:10}}")
+    private int dbPermits;
+
+    @Value("${filemanager.executor.disk.permits:64}")
+    private int diskPermits;
+
+    private final Map<Resource, Semaphore> limits = new EnumMap<>(Resource.class);
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        if (dbPermits <= 0 || diskPermits <= 0) {
+            throw new ValidationException("Лимиты одновременных операций должны быть положительными");
+        }
+        limits.put(Resource.DB, new Semaphore(dbPermits, true));
+        limits.put(Resource.DISK, new Semaphore(diskPermits, true));
+        if (virtualThreads) {
+            executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("file-op-", 0).factory());
+        } else {
+            int threads = platformThreads > 0 ? platformThreads : Runtime.getRuntime().availableProcessors();
+            executor = Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("file-op-", 0).daemon().factory());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Запускает операцию, захватив разрешения на указанные ресурсы.
+     * Разрешения берутся в порядке объявления Resource, поэтому операции
+     * с разными наборами ресурсов не блокируют друг друга взаимно.
+     */
+    public <T> CompletableFuture<T> submit(Set<Resource> resources, Callable<T> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            List<Semaphore> acquired = new ArrayList<>(resources.size());
+            inFlight.incrementAndGet();
+            try {
+                for (Resource resource : Resource.values()) {
+                    if (resources.contains(resource)) {
+                        Semaphore semaphore = limits.get(resource);
+                        semaphore.acquire();
+                        acquired.add(semaphore);
+                    }
+                }
+                result.complete(operation.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                acquired.forEach(Semaphore::release);
+                inFlight.decrementAndGet();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Выполняет операцию на исполнителе и ожидает ее результата. Исключение
+     * операции пробрасывается без обертки. Не вызывается из операций самого
+     * исполнителя: при пуле потоков ОС ожидание могло бы занять все потоки.
+     */
+    public <T> T call(Set<Resource> resources, Callable<T> operation) throws Exception {
+        try {
+            return submit(resources, operation).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    public void run(Set<Resource> resources, Action action) throws Exception {
+        call(resources, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Запускает операции и ожидает завершения всех; результаты в порядке операций
+     */
+    public <T> List<CompletableFuture<T>> submitAll(Set<Resource> resources, List<? extends Callable<T>> operations) {
+        List<CompletableFuture<T>> futures = operations.stream()
+            .map(operation -> submit(resources, operation))
+            .toList();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+        return futures;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Число операций, ожидающих разрешения на ресурс
+     */
+    public int getWaiting(Resource resource) {
+        return limits.get(resource).getQueueLength();
+    }
+}
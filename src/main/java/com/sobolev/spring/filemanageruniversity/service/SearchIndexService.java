@@ -0,0 +1,880 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.config.FileManagerConstants;
+import com.sobolev.spring.filemanageruniversity.dto.SearchResult;
+import com.sobolev.spring.filemanageruniversity.entity.FileEntity;
+import com.sobolev.spring.filemanageruniversity.entity.OperationType;
+import com.sobolev.spring.filemanageruniversity.entity.User;
+import com.sobolev.spring.filemanageruniversity.exception.ValidationException;
+import com.sobolev.spring.filemanageruniversity.util.FileNameUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Полнотекстовый поиск по содержимому файлов базовой директории.
+ * Инвертированный индекс хранится сегментами в filemanager.search.directory
+ * (формат - SearchSegment). Изменения файлов применяются одним фоновым потоком
+ * после фиксации транзакции: новые документы копятся в памяти и раз в
+ * filemanager.search.flush.interval.ms записываются новым сегментом, удаленные
+ * отмечаются в журнале deletes.log и вычищаются при слиянии сегментов.
+ * Запрос состоит из слов, фраз в кавычках и префиксов со звездочкой, условия
+ * объединяются по И; в выдачу попадают только файлы текущего пользователя.
+ * Индекс - производные данные: после сбоя он может отставать от файлов
+ * и пересоздается методом rebuild.
+ */
+@Service
+public class SearchIndexService {
+
+    private static final String DELETES_LOG = "deletes.log";
+    private static final int MAX_TOKEN_LENGTH = 64;
+    private static final int MAX_QUERY_CLAUSES = 16;
+    private static final int BINARY_PROBE_SIZE = 8192;
+    private static final long MAX_BUFFERED_POSITIONS = 4_000_000;
+
+    private final FileLockManager fileLockManager;
+    private final AuditService auditService;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${filemanager.search.enabled:false}")
+    private boolean enabled;
+
+    @Value("${filemanager.search.directory:./search-index}")
+    private String indexDirectory;
+
+    @Value("${filemanager.search.max.file.size:10485760}")
+    private long maxFileSize; // Файлы больше не индексируются
+
+    @Value("${filemanager.search.flush.interval.ms:1000}")
+    private long flushIntervalMs; // Через сколько изменения становятся видны поиску
+
+    @Value("${filemanager.search.max.buffered.docs:1000}")
+    private int maxBufferedDocs;
+
+    @Value("${filemanager.search.max.segments:8}")
+    private int maxSegments; // При превышении мелкие сегменты сливаются
+
+    @Value("${filemanager.search.max.results:100}")
+    private int maxResults;
+
+    @Value("${filemanager.search.max.prefix.terms:1024}")
+    private int maxPrefixTerms; // Сколько слов может раскрыть один префикс
+
+    // Список сегментов заменяется под блокировкой записи, запросы читают под блокировкой чтения
+    private final ReentrantReadWriteLock segmentsLock = new ReentrantReadWriteLock();
+    private volatile List<SearchSegment> segments = List.of();
+    // Документы, видимые поиску
+    private final Map<Integer, SearchSegment.Doc> liveDocs = new ConcurrentHashMap<>();
+
+    // Состояние ниже меняется только потоком индексации
+    private final Map<String, SearchSegment.Doc> docsByLocation = new HashMap<>();
+    // Удаленные документы, которые еще есть в сегментах
+    private final Set<Integer> deleted = new HashSet<>();
+    private final NavigableMap<String, List<SearchSegment.Posting>> bufferTerms = new TreeMap<>();
+    private final List<SearchSegment.Doc> bufferDocs = new ArrayList<>();
+    private long bufferedPositions;
+    private int nextDocId;
+    private long nextSegmentNumber;
+    private FileChannel deletesLog;
+
+    private Path directory;
+    private ScheduledExecutorService indexer;
+
+    @Autowired
+    public SearchIndexService(FileLockManager fileLockManager, AuditService auditService,
+                              JdbcTemplate jdbcTemplate) {
+        this.fileLockManager = fileLockManager;
+        this.auditService = auditService;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (maxFileSize <= 0 || flushIntervalMs <= 0 || maxBufferedDocs <= 0 || maxSegments < 2
+                || maxResults <= 0 || maxPrefixTerms <= 0) {
+            throw new ValidationException("Некорректные параметры поискового индекса");
+        }
+        directory = Paths.get(indexDirectory).toAbsolutePath().normalize();
+        Files.createDirectories(directory);
+        load();
+        indexer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-indexer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        indexer.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException, IOException {
+        if (indexer == null) {
+            return;
+        }
+        // Накопленные в памяти документы сбрасываются перед остановкой
+        indexer.execute(this::flushQuietly);
+        indexer.shutdown();
+        indexer.awaitTermination(30, TimeUnit.SECONDS);
+        segmentsLock.writeLock().lock();
+        try {
+            for (SearchSegment segment : segments) {
+                segment.close();
+            }
+            segments = List.of();
+        } finally {
+            segmentsLock.writeLock().unlock();
+        }
+        deletesLog.close();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Планирует индексацию файла; прежний документ по этому пути заменяется
+     */
+    public void scheduleIndex(FileEntity fileEntity) {
+        if (fileEntity.getOwner() == null) {
+            return;
+        }
+        String location = fileEntity.getLocation();
+        long ownerId = fileEntity.getOwner().getId();
+        afterCommit(() -> update(location, ownerId));
+    }
+
+    public void scheduleIndex(Path path, long ownerId) {
+        String location = path.toString();
+        afterCommit(() -> update(location, ownerId));
+    }
+
+    public void scheduleRemove(Path path) {
+        String location = path.toString();
+        afterCommit(() -> remove(location));
+    }
+
+    /**
+     * Планирует удаление из индекса всех файлов под директорией
+     */
+    public void scheduleRemoveTree(Path directoryPath) {
+        String prefix = directoryPath + File.separator;
+        afterCommit(() -> {
+            List<String> locations = docsByLocation.keySet().stream()
+                .filter(location -> location.startsWith(prefix))
+                .toList();
+            for (String location : locations) {
+                remove(location);
+            }
+        });
+    }
+
+    /**
+     * Планирует перенос документа на новый путь с прежним владельцем
+     */
+    public void scheduleMove(Path source, Path target) {
+        String sourceLocation = source.toString();
+        String targetLocation = target.toString();
+        afterCommit(() -> {
+            SearchSegment.Doc doc = docsByLocation.get(sourceLocation);
+            remove(sourceLocation);
+            if (doc != null) {
+                update(targetLocation, doc.ownerId());
+            } else {
+                remove(targetLocation);
+            }
+        });
+    }
+
+    /**
+     * Поиск по файлам пользователя. Слова запроса должны встретиться в файле все;
+     * "фраза в кавычках" - подряд, слово* - любое слово с таким началом.
+     * Результаты упорядочены по числу вхождений.
+     */
+    public SearchResult search(String query, User user) throws IOException {
+        if (!enabled) {
+            throw new ValidationException("Полнотекстовый поиск отключен");
+        }
+        long start = System.nanoTime();
+        List<Clause> clauses = parse(query);
+        long ownerId = user.getId();
+
+        Map<Integer, Integer> scores = null;
+        segmentsLock.readLock().lock();
+        try {
+            List<SearchSegment> current = segments;
+            for (Clause clause : clauses) {
+                Map<Integer, Integer> matches = evaluate(current, clause, ownerId);
+                scores = scores == null ? matches : intersect(scores, matches);
+                if (scores.isEmpty()) {
+                    break;
+                }
+            }
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+
+        List<SearchResult.Hit> hits = new ArrayList<>(scores.size());
+        scores.forEach((docId, occurrences) -> {
+            SearchSegment.Doc doc = liveDocs.get(docId);
+            // Документ мог быть удален во время запроса
+            if (doc != null) {
+                hits.add(new SearchResult.Hit(doc.location(), occurrences));
+            }
+        });
+        hits.sort(Comparator.comparingInt(SearchResult.Hit::occurrences).reversed()
+            .thenComparing(SearchResult.Hit::location));
+        SearchResult result = new SearchResult(List.copyOf(hits.subList(0, Math.min(hits.size(), maxResults))),
+            hits.size(), Duration.ofNanos(System.nanoTime() - start));
+
+        auditService.logOperation(user, OperationType.READ, null,
+            "Поиск по содержимому: " + query.trim() + " (найдено " + result.totalHits() + ")");
+        return result;
+    }
+
+    /**
+     * Пересоздает индекс по всем зарегистрированным в БД файлам. Выполняется потоком
+     * индексации, поэтому изменения, поступившие во время перестроения, применяются после него.
+     * @return число проиндексированных файлов
+     */
+    public int rebuild(User user) throws IOException {
+        if (!enabled) {
+            throw new ValidationException("Полнотекстовый поиск отключен");
+        }
+        Future<Integer> future = indexer.submit(this::rebuildIndex);
+        int indexed;
+        try {
+            indexed = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Ожидание перестроения поискового индекса прервано");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException("Ошибка перестроения поискового индекса", e.getCause());
+        }
+        auditService.logOperation(user, OperationType.READ, null,
+            "Перестроение поискового индекса: " + indexed + " файлов");
+        return indexed;
+    }
+
+    // ==================== Поток индексации ====================
+
+    private void afterCommit(IndexTask task) {
+        if (!enabled) {
+            return;
+        }
+        Runnable submit = () -> submit(task);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit.run();
+                }
+            });
+        } else {
+            submit.run();
+        }
+    }
+
+    private void submit(IndexTask task) {
+        try {
+            indexer.execute(() -> {
+                try {
+                    task.run();
+                } catch (IOException | RuntimeException e) {
+                    // Файл мог быть удален или изменен повторно - следующее изменение переиндексирует его
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Приложение останавливается - изменение подхватит перестроение индекса
+        }
+    }
+
+    private void update(String location, long ownerId) throws IOException {
+        remove(location);
+        String text = readText(Paths.get(location));
+        if (text != null) {
+            addDocument(location, ownerId, text);
+        }
+    }
+
+    private void remove(String location) throws IOException {
+        SearchSegment.Doc doc = docsByLocation.remove(location);
+        if (doc == null) {
+            return;
+        }
+        liveDocs.remove(doc.id());
+        deleted.add(doc.id());
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES).putInt(doc.id()).flip();
+        while (record.hasRemaining()) {
+            deletesLog.write(record);
+        }
+    }
+
+    /**
+     * Содержимое текстового файла; null - файл отсутствует, слишком велик или двоичный
+     */
+    private String readText(Path path) throws IOException {
+        if (!Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+            return null;
+        }
+        try (FileLockManager.Handle lock = fileLockManager.lockRead(path)) {
+            if (Files.size(path) > maxFileSize) {
+                return null;
+            }
+            byte[] content = Files.readAllBytes(path);
+            for (int i = 0; i < Math.min(content.length, BINARY_PROBE_SIZE); i++) {
+                if (content[i] == 0) {
+                    return null;
+                }
+            }
+            return new String(content, Charset.forName(FileManagerConstants.DEFAULT_CHARSET));
+        }
+    }
+
+    private void addDocument(String location, long ownerId, String text) throws IOException {
+        Map<String, Positions> termPositions = new HashMap<>();
+        int[] position = {0};
+        tokenize(text, token -> termPositions.computeIfAbsent(token, term -> new Positions()).add(position[0]++));
+
+        SearchSegment.Doc doc = new SearchSegment.Doc(nextDocId++, location, ownerId);
+        termPositions.forEach((term, positions) -> bufferTerms.computeIfAbsent(term, key -> new ArrayList<>())
+            .add(new SearchSegment.Posting(doc.id(), positions.toArray())));
+        bufferDocs.add(doc);
+        docsByLocation.put(location, doc);
+        bufferedPositions += position[0];
+        if (bufferDocs.size() >= maxBufferedDocs || bufferedPositions >= MAX_BUFFERED_POSITIONS) {
+            flush();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            // Документы буфера потеряны - их вернет следующее изменение файла или перестроение индекса
+        }
+    }
+
+    /**
+     * Записывает накопленные документы новым сегментом
+     */
+    private void flush() throws IOException {
+        if (bufferDocs.isEmpty()) {
+            return;
+        }
+        List<SearchSegment.Doc> docs = new ArrayList<>(bufferDocs.size());
+        List<Integer> dropped = new ArrayList<>();
+        for (SearchSegment.Doc doc : bufferDocs) {
+            if (deleted.contains(doc.id())) {
+                dropped.add(doc.id());
+            } else {
+                docs.add(doc);
+            }
+        }
+        try {
+            if (!docs.isEmpty()) {
+                SearchSegment segment = writeSegment(docs, bufferTerms.keySet(), bufferTerms::get);
+                List<SearchSegment> updated = new ArrayList<>(segments);
+                updated.add(segment);
+                replaceSegments(updated, List.of());
+                docs.forEach(doc -> liveDocs.put(doc.id(), doc));
+            }
+        } finally {
+            bufferTerms.clear();
+            bufferDocs.clear();
+            bufferedPositions = 0;
+            // Удаленные до сброса документы в сегмент не попали
+            dropped.forEach(deleted::remove);
+        }
+        if (segments.size() > maxSegments) {
+            merge();
+        }
+    }
+
+    /**
+     * Сливает самые мелкие сегменты в один, пока их не станет вдвое меньше предела:
+     * объем перезаписи растет логарифмически, удаленные документы вычищаются
+     */
+    private void merge() throws IOException {
+        List<SearchSegment> current = segments;
+        List<SearchSegment> sources = current.stream()
+            .sorted(Comparator.comparingInt(segment -> segment.docs().size()))
+            .limit(current.size() - maxSegments / 2 + 1L)
+            .toList();
+
+        Set<Integer> sourceDocIds = new HashSet<>();
+        List<SearchSegment.Doc> docs = new ArrayList<>();
+        Set<String> terms = new TreeSet<>();
+        for (SearchSegment source : sources) {
+            for (SearchSegment.Doc doc : source.docs()) {
+                sourceDocIds.add(doc.id());
+                if (!deleted.contains(doc.id())) {
+                    docs.add(doc);
+                }
+            }
+            terms.addAll(source.terms().keySet());
+        }
+        docs.sort(Comparator.comparingInt(SearchSegment.Doc::id));
+
+        SearchSegment merged = writeSegment(docs, terms, term -> {
+            List<SearchSegment.Posting> postings = new ArrayList<>();
+            for (SearchSegment source : sources) {
+                postings.addAll(source.read(term));
+            }
+            postings.sort(Comparator.comparingInt(SearchSegment.Posting::docId));
+            return postings;
+        });
+        List<SearchSegment> updated = new ArrayList<>(current);
+        updated.removeAll(sources);
+        updated.add(merged);
+        replaceSegments(updated, sources);
+
+        deleted.removeAll(sourceDocIds);
+        rewriteDeletesLog();
+    }
+
+    private SearchSegment writeSegment(List<SearchSegment.Doc> docs, Collection<String> terms,
+                                       PostingSource source) throws IOException {
+        try (SearchSegment.Writer writer = new SearchSegment.Writer(directory, nextSegmentNumber++)) {
+            for (String term : terms) {
+                List<SearchSegment.Posting> postings = source.postings(term);
+                postings.removeIf(posting -> deleted.contains(posting.docId()));
+                writer.addTerm(term, postings);
+            }
+            return writer.finish(docs);
+        }
+    }
+
+    /**
+     * Публикует новый список сегментов; удаляемые закрываются, когда их уже не читает ни один запрос
+     */
+    private void replaceSegments(List<SearchSegment> updated, List<SearchSegment> removed) throws IOException {
+        segmentsLock.writeLock().lock();
+        try {
+            segments = List.copyOf(updated);
+            for (SearchSegment segment : removed) {
+                segment.delete(directory);
+            }
+        } finally {
+            segmentsLock.writeLock().unlock();
+        }
+    }
+
+    private int rebuildIndex() throws IOException {
+        replaceSegments(List.of(), segments);
+        liveDocs.clear();
+        docsByLocation.clear();
+        deleted.clear();
+        bufferTerms.clear();
+        bufferDocs.clear();
+        bufferedPositions = 0;
+        nextDocId = 0;
+        rewriteDeletesLog();
+
+        List<IndexedFile> files = jdbcTemplate.query("SELECT location, owner_id FROM file_entity",
+            (rs, rowNum) -> new IndexedFile(rs.getString(1), rs.getLong(2)));
+        int indexed = 0;
+        for (IndexedFile file : files) {
+            try {
+                String text = readText(Paths.get(file.location()));
+                if (text != null) {
+                    addDocument(file.location(), file.ownerId(), text);
+                    indexed++;
+                }
+            } catch (IOException e) {
+                // Недоступный файл пропускается
+            }
+        }
+        flush();
+        return indexed;
+    }
+
+    // ==================== Загрузка с диска ====================
+
+    private void load() throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        List<Path> postings = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (FileNameUtils.isTemporary(name)) {
+                    // Недописанный сегмент или журнал
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(SearchSegment.DICT_SUFFIX)) {
+                    numbers.add(SearchSegment.numberOf(file));
+                } else if (name.endsWith(SearchSegment.POST_SUFFIX)) {
+                    postings.add(file);
+                }
+            }
+        }
+        numbers.sort(Comparator.reverseOrder());
+        nextSegmentNumber = numbers.isEmpty() ? 0 : numbers.get(0) + 1;
+
+        Set<Integer> loggedDeletes = readDeletesLog();
+        int maxDocId = loggedDeletes.stream().mapToInt(Integer::intValue).max().orElse(-1);
+        Set<Integer> seen = new HashSet<>();
+        List<SearchSegment> loaded = new ArrayList<>();
+        // От новых к старым: сегмент, документы которого уже есть в более новом, -
+        // источник слияния, прерванного до удаления источников
+        for (long number : numbers) {
+            SearchSegment segment;
+            try {
+                segment = SearchSegment.open(directory, number);
+            } catch (IOException e) {
+                // Поврежденный сегмент отбрасывается - его файлы вернет перестроение индекса
+                Files.deleteIfExists(SearchSegment.dictPath(directory, number));
+                continue;
+            }
+            if (segment.docs().stream().anyMatch(doc -> seen.contains(doc.id()))) {
+                segment.delete(directory);
+                continue;
+            }
+            loaded.add(segment);
+            for (SearchSegment.Doc doc : segment.docs()) {
+                seen.add(doc.id());
+                maxDocId = Math.max(maxDocId, doc.id());
+                if (loggedDeletes.contains(doc.id())) {
+                    deleted.add(doc.id());
+                } else {
+                    liveDocs.put(doc.id(), doc);
+                    docsByLocation.put(doc.location(), doc);
+                }
+            }
+        }
+        nextDocId = maxDocId + 1;
+        segments = List.copyOf(loaded);
+
+        // Списки вхождений без словаря остались от сбоя во время записи сегмента
+        for (Path file : postings) {
+            String name = file.getFileName().toString();
+            Path dict = file.resolveSibling(name.substring(0, name.length() - SearchSegment.POST_SUFFIX.length())
+                + SearchSegment.DICT_SUFFIX);
+            if (!Files.exists(dict)) {
+                Files.deleteIfExists(file);
+            }
+        }
+        rewriteDeletesLog();
+    }
+
+    private Set<Integer> readDeletesLog() throws IOException {
+        Path log = directory.resolve(DELETES_LOG);
+        Set<Integer> result = new HashSet<>();
+        if (!Files.exists(log)) {
+            return result;
+        }
+        // Неполная запись в конце журнала после сбоя отбрасывается
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(log));
+        while (content.remaining() >= Integer.BYTES) {
+            result.add(content.getInt());
+        }
+        return result;
+    }
+
+    /**
+     * Переписывает журнал удалений, оставляя только документы, которые еще есть в сегментах
+     */
+    private void rewriteDeletesLog() throws IOException {
+        if (deletesLog != null) {
+            deletesLog.close();
+        }
+        Path log = directory.resolve(DELETES_LOG);
+        Path temp = FileNameUtils.temporarySibling(log, "tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer content = ByteBuffer.allocate(deleted.size() * Integer.BYTES);
+            deleted.forEach(content::putInt);
+            content.flip();
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        }
+        Files.move(temp, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        deletesLog = FileChannel.open(log, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // ==================== Запросы ====================
+
+    private List<Clause> parse(String query) {
+        List<Clause> clauses = new ArrayList<>();
+        String text = query == null ? "" : query;
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            if (c == '"') {
+                int end = text.indexOf('"', i + 1);
+                if (end < 0) {
+                    end = text.length();
+                }
+                addPhrase(clauses, tokens(text.substring(i + 1, end)));
+                i = end + 1;
+                continue;
+            }
+            int end = i;
+            while (end < text.length() && !Character.isWhitespace(text.charAt(end)) && text.charAt(end) != '"') {
+                end++;
+            }
+            String word = text.substring(i, end);
+            List<String> wordTokens = tokens(word);
+            if (word.endsWith("*") && !wordTokens.isEmpty()) {
+                // Префиксом считается последнее слово, например "file-man*" - "file" и "man*"
+                addPhrase(clauses, wordTokens.subList(0, wordTokens.size() - 1));
+                clauses.add(new Clause(ClauseKind.PREFIX, List.of(wordTokens.get(wordTokens.size() - 1))));
+            } else {
+                // Слово из нескольких частей, например "file-manager", ищется как фраза
+                addPhrase(clauses, wordTokens);
+            }
+            i = end;
+        }
+        if (clauses.isEmpty()) {
+            throw new ValidationException("Поисковый запрос не содержит слов");
+        }
+        if (clauses.size() > MAX_QUERY_CLAUSES) {
+            throw new ValidationException("Слишком много условий в запросе (максимум " + MAX_QUERY_CLAUSES + ")");
+        }
+        return clauses;
+    }
+
+    private static void addPhrase(List<Clause> clauses, List<String> terms) {
+        if (terms.size() == 1) {
+            clauses.add(new Clause(ClauseKind.TERM, terms));
+        } else if (terms.size() > 1) {
+            clauses.add(new Clause(ClauseKind.PHRASE, List.copyOf(terms)));
+        }
+    }
+
+    private Map<Integer, Integer> evaluate(List<SearchSegment> current, Clause clause, long ownerId)
+            throws IOException {
+        Map<Integer, Integer> matches = new HashMap<>();
+        String first = clause.terms().get(0);
+        int expanded = 0;
+        for (SearchSegment segment : current) {
+            switch (clause.kind()) {
+                case TERM -> addOccurrences(segment, segment.terms().get(first), ownerId, matches);
+                case PREFIX -> {
+                    NavigableMap<String, SearchSegment.TermInfo> range =
+                        segment.terms().subMap(first, true, first + Character.MAX_VALUE, false);
+                    expanded += range.size();
+                    if (expanded > maxPrefixTerms) {
+                        throw new ValidationException("Префикс \"" + first + "*\" подходит к слишком многим словам");
+                    }
+                    for (SearchSegment.TermInfo info : range.values()) {
+                        addOccurrences(segment, info, ownerId, matches);
+                    }
+                }
+                case PHRASE -> addPhraseOccurrences(segment, clause.terms(), ownerId, matches);
+            }
+        }
+        return matches;
+    }
+
+    private void addOccurrences(SearchSegment segment, SearchSegment.TermInfo info, long ownerId,
+                                Map<Integer, Integer> matches) throws IOException {
+        if (info == null) {
+            return;
+        }
+        for (SearchSegment.Posting posting : segment.read(info)) {
+            if (ownedBy(posting.docId(), ownerId)) {
+                matches.merge(posting.docId(), posting.positions().length, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Вхождения фразы: позиции слов в документе должны идти подряд.
+     * Документ целиком лежит в одном сегменте, поэтому фраза проверяется в пределах сегмента.
+     */
+    private void addPhraseOccurrences(SearchSegment segment, List<String> terms, long ownerId,
+                                      Map<Integer, Integer> matches) throws IOException {
+        List<SearchSegment.Posting> firstPostings = segment.read(terms.get(0));
+        if (firstPostings.isEmpty()) {
+            return;
+        }
+        List<Map<Integer, int[]>> following = new ArrayList<>(terms.size() - 1);
+        for (String term : terms.subList(1, terms.size())) {
+            List<SearchSegment.Posting> postings = segment.read(term);
+            if (postings.isEmpty()) {
+                return;
+            }
+            Map<Integer, int[]> positionsByDoc = new HashMap<>();
+            for (SearchSegment.Posting posting : postings) {
+                positionsByDoc.put(posting.docId(), posting.positions());
+            }
+            following.add(positionsByDoc);
+        }
+
+        int[][] positions = new int[following.size()][];
+        for (SearchSegment.Posting posting : firstPostings) {
+            if (!ownedBy(posting.docId(), ownerId) || !collectPositions(following, posting.docId(), positions)) {
+                continue;
+            }
+            int count = 0;
+            for (int position : posting.positions()) {
+                boolean match = true;
+                for (int i = 0; i < positions.length && match; i++) {
+                    match = Arrays.binarySearch(positions[i], position + i + 1) >= 0;
+                }
+                if (match) {
+                    count++;
+                }
+            }
+            if (count > 0) {
+                matches.merge(posting.docId(), count, Integer::sum);
+            }
+        }
+    }
+
+    private static boolean collectPositions(List<Map<Integer, int[]>> following, int docId, int[][] positions) {
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = following.get(i).get(docId);
+            if (positions[i] == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean ownedBy(int docId, long ownerId) {
+        SearchSegment.Doc doc = liveDocs.get(docId);
+        return doc != null && doc.ownerId() == ownerId;
+    }
+
+    private static Map<Integer, Integer> intersect(Map<Integer, Integer> left, Map<Integer, Integer> right) {
+        Map<Integer, Integer> smaller = left.size() <= right.size() ? left : right;
+        Map<Integer, Integer> larger = smaller == left ? right : left;
+        Map<Integer, Integer> result = new HashMap<>();
+        smaller.forEach((docId, occurrences) -> {
+            Integer other = larger.get(docId);
+            if (other != null) {
+                result.put(docId, occurrences + other);
+            }
+        });
+        return result;
+    }
+
+    private static List<String> tokens(String text) {
+        List<String> result = new ArrayList<>();
+        tokenize(text, result::add);
+        return result;
+    }
+
+    /**
+     * Разбивает текст на слова - последовательности букв и цифр в нижнем регистре.
+     * Слова длиннее MAX_TOKEN_LENGTH пропускаются.
+     */
+    static void tokenize(CharSequence text, Consumer<String> consumer) {
+        StringBuilder token = new StringBuilder();
+        boolean tooLong = false;
+        int i = 0;
+        while (i <= text.length()) {
+            int codePoint = i < text.length() ? Character.codePointAt(text, i) : ' ';
+            i += i < text.length() ? Character.charCount(codePoint) : 1;
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (token.length() < MAX_TOKEN_LENGTH) {
+                    token.appendCodePoint(Character.toLowerCase(codePoint));
+                } else {
+                    tooLong = true;
+                }
+            } else if (!token.isEmpty()) {
+                if (!tooLong) {
+                    consumer.accept(token.toString());
+                }
+                token.setLength(0);
+                tooLong = false;
+            }
+        }
+    }
+
+    private enum ClauseKind {
+        TERM,
+        PREFIX,
+        PHRASE
+    }
+
+    private record Clause(ClauseKind kind, List<String> terms) {
+    }
+
+    private record IndexedFile(String location, long ownerId) {
+    }
+
+    @FunctionalInterface
+    private interface IndexTask {
+        void run() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface PostingSource {
+        List<SearchSegment.Posting> postings(String term) throws IOException;
+    }
+
+    /**
+     * Растущий массив позиций слова в документе
+     */
+    private static final class Positions {
+
+        private int[] values = new int[4];
+        private int size;
+
+        private void add(int position) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = position;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.util.FileNameUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Неизменяемый сегмент инвертированного индекса на диске.
+ * Файл .post содержит списки вхождений терминов подряд, файл .dict - таблицу
+ * документов и словарь терминов со смещениями списков. Файл .dict пишется
+ * последним, поэтому сегмент без него считается недописанным.
+ * Список вхождений термина хранит для каждого документа по возрастанию docId
+ * разность с предыдущим docId, число вхождений и разности позиций - все в varint.
+ * Словарь держится в памяти, списки вхождений читаются с диска по смещению.
+ */
+final class SearchSegment implements Closeable {
+
+    static final String DICT_SUFFIX = ".dict";
+    static final String POST_SUFFIX = ".post";
+
+    private static final int MAGIC = 0x53494458; // "SIDX"
+    private static final int VERSION = 1;
+
+    private final long number;
+    private final List<Doc> docs;
+    private final NavigableMap<String, TermInfo> terms;
+    private final FileChannel postings;
+
+    private SearchSegment(long number, List<Doc> docs, NavigableMap<String, TermInfo> terms, FileChannel postings) {
+        this.number = number;
+        this.docs = docs;
+        this.terms = terms;
+        this.postings = postings;
+    }
+
+    /**
+     * Документ сегмента: путь файла и владелец на момент индексации
+     */
+    record Doc(int id, String location, long ownerId) {
+    }
+
+    record TermInfo(int docFreq, long offset, int length) {
+    }
+
+    /**
+     * Вхождения термина в документ; позиции - порядковые номера слов по возрастанию
+     */
+    record Posting(int docId, int[] positions) {
+    }
+
+    static Path dictPath(Path directory, long number) {
+        return directory.resolve(String.format("segment-%012d", number) + DICT_SUFFIX);
+    }
+
+    static Path postPath(Path directory, long number) {
+        return directory.resolve(String.format("segment-%012d", number) + POST_SUFFIX);
+    }
+
+    static long numberOf(Path dictFile) {
+        String name = dictFile.getFileName().toString();
+        return Long.parseLong(name.substring("segment-".length(), name.length() - DICT_SUFFIX.length()));
+    }
+
+    List<Doc> docs() {
+        return docs;
+    }
+
+    NavigableMap<String, TermInfo> terms() {
+        return terms;
+    }
+
+    static SearchSegment open(Path directory, long number) throws IOException {
+        List<Doc> docs;
+        NavigableMap<String, TermInfo> terms = new TreeMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(dictPath(directory, number))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Неизвестный формат сегмента поискового индекса: " + number);
+            }
+            int docCount = readVarInt(in);
+            docs = new ArrayList<>(docCount);
+            int docId = 0;
+            for (int i = 0; i < docCount; i++) {
+                docId += readVarInt(in);
+                docs.add(new Doc(docId, in.readUTF(), readVarLong(in)));
+            }
+            int termCount = readVarInt(in);
+            long offset = 0;
+            for (int i = 0; i < termCount; i++) {
+                String term = in.readUTF();
+                int docFreq = readVarInt(in);
+                int length = readVarInt(in);
+                terms.put(term, new TermInfo(docFreq, offset, length));
+                offset += length;
+            }
+        }
+        FileChannel channel = FileChannel.open(postPath(directory, number), StandardOpenOption.READ);
+        return new SearchSegment(number, Collections.unmodifiableList(docs), terms, channel);
+    }
+
+    /**
+     * Список вхождений термина; пустой, если термина в сегменте нет
+     */
+    List<Posting> read(String term) throws IOException {
+        TermInfo info = terms.get(term);
+        return info == null ? List.of() : read(info);
+    }
+
+    List<Posting> read(TermInfo info) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(info.length());
+        while (buffer.hasRemaining()) {
+            if (postings.read(buffer, info.offset() + buffer.position()) < 0) {
+                throw new EOFException("Сегмент поискового индекса поврежден: " + number);
+            }
+        }
+        buffer.flip();
+        List<Posting> result = new ArrayList<>(info.docFreq());
+        int docId = 0;
+        for (int i = 0; i < info.docFreq(); i++) {
+            docId += readVarInt(buffer);
+            int[] positions = new int[readVarInt(buffer)];
+            int position = 0;
+            for (int j = 0; j < positions.length; j++) {
+                position += readVarInt(buffer);
+                positions[j] = position;
+            }
+            result.add(new Posting(docId, positions));
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        postings.close();
+    }
+
+    void delete(Path directory) throws IOException {
+        close();
+        Files.deleteIfExists(dictPath(directory, number));
+        Files.deleteIfExists(postPath(directory, number));
+    }
+
+    /**
+     * Последовательная запись нового сегмента: термины добавляются в порядке
+     * возрастания, документы каждого термина - по возрастанию docId
+     */
+    static final class Writer implements Closeable {
+
+        private final Path directory;
+        private final long number;
+        private final Path postTemp;
+        private final DataOutputStream post;
+        private final List<String> termNames = new ArrayList<>();
+        private final List<int[]> termStats = new ArrayList<>(); // docFreq, length
+        private boolean finished;
+
+        Writer(Path directory, long number) throws IOException {
+            this.directory = directory;
+            this.number = number;
+            this.postTemp = FileNameUtils.temporarySibling(postPath(directory, number), "tmp");
+            this.post = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(postTemp)));
+        }
+
+        void addTerm(String term, List<Posting> postingList) throws IOException {
+            if (postingList.isEmpty()) {
+                return;
+            }
+            long start = post.size();
+            int previousDoc = 0;
+            for (Posting posting : postingList) {
+                writeVarInt(post, posting.docId() - previousDoc);
+                previousDoc = posting.docId();
+                writeVarInt(post, posting.positions().length);
+                int previousPosition = 0;
+                for (int position : posting.positions()) {
+                    writeVarInt(post, position - previousPosition);
+                    previousPosition = position;
+                }
+            }
+            // DataOutputStream.size() переполняется после 2GB - длина считается отдельно
+            long length = (post.size() - start) & 0xFFFFFFFFL;
+            termNames.add(term);
+            termStats.add(new int[] {postingList.size(), (int) length});
+        }
+
+        /**
+         * Дописывает словарь и атомарно публикует сегмент
+         */
+        SearchSegment finish(List<Doc> docs) throws IOException {
+            post.close();
+            Path dictTemp = FileNameUtils.temporarySibling(dictPath(directory, number), "tmp");
+            try (DataOutputStream dict = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(dictTemp)))) {
+                dict.writeInt(MAGIC);
+                dict.writeInt(VERSION);
+                writeVarInt(dict, docs.size());
+                int previousDoc = 0;
+                for (Doc doc : docs) {
+                    writeVarInt(dict, doc.id() - previousDoc);
+                    previousDoc = doc.id();
+                    dict.writeUTF(doc.location());
+                    writeVarLong(dict, doc.ownerId());
+                }
+                writeVarInt(dict, termNames.size());
+                for (int i = 0; i < termNames.size(); i++) {
+                    dict.writeUTF(termNames.get(i));
+                    writeVarInt(dict, termStats.get(i)[0]);
+                    writeVarInt(dict, termStats.get(i)[1]);
+                }
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(dictTemp);
+                throw e;
+            }
+            Files.move(postTemp, postPath(directory, number), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+            Files.move(dictTemp, dictPath(directory, number), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+            return open(directory, number);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                post.close();
+                Files.deleteIfExists(postTemp);
+            }
+        }
+    }
+
+    static void writeVarInt(OutputStream out, int value) throws IOException {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static int readVarInt(InputStream in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Неожиданный конец данных поискового индекса");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Некорректное значение varint в поисковом индексе");
+    }
+
+    private static int readVarInt(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                throw new EOFException("Неожиданный конец списка вхождений");
+            }
+            int b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (int) value;
+            }
+        }
+        throw new IOException("Некорректное значение varint в поисковом индексе");
+    }
+}
@@ -19,6 +19,7 @@ import java.nio.file.Path;
 public class ZipService {
 
     private final SecurityService securityService;
+    private final BlobStoreService blobStoreService;
 
     @Value("${filemanager.zip.max.ratio:100}")
     private int maxCompressionRatio; // Максимальная степень сжатия (1:100)
@@ -27,8 +28,9 @@ public class ZipService {
     private long maxUncompressedSize; // 1GB максимальный размер распакованных данных
 
     @Autowired
-    public ZipService(SecurityService securityService) {
+    public ZipService(SecurityService securityService, BlobStoreService blobStoreService) {
         this.securityService = securityService;
+        this.blobStoreService = blobStoreService;
     }
 
     public void createZipArchive(String zipPath, String... filePaths) throws IOException {
@@ -36,6 +38,7 @@ public class ZipService {
 
         // Создаем директорию, если не существует
         Files.createDirectories(validatedZipPath.getParent());
+        blobStoreService.prepareForOverwrite(validatedZipPath);
 
         long totalUncompressedSize = 0;
 
@@ -139,6 +142,7 @@ public class ZipService {
                     Files.createDirectories(entryPath);
                 } else {
                     Files.createDirectories(entryPath.getParent());
+                    blobStoreService.prepareForOverwrite(entryPath);
 
                     // Безопасное копирование с ограничением размера
                     long entrySize = entry.getSize();
@@ -0,0 +1,114 @@
+package com.sobolev.spring.filemanageruniversity.util;
+
+import com.sobolev.spring.filemanageruniversity.config.FileManagerConstants;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Утилитный класс для вычисления контрольных сумм
+ */
+public final class ChecksumUtils {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // Отраженный полином CRC32C (Castagnoli)
+    private static final long CRC32C_POLYNOMIAL = 0x82F63B78L;
+
+    private ChecksumUtils() {
+        // Утилитный класс
+    }
+
+    /**
+     * Создает новый экземпляр алгоритма хеширования для checksum
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(FileManagerConstants.CHECKSUM_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Алгоритм хеширования недоступен: "
+                + FileManagerConstants.CHECKSUM_ALGORITHM, e);
+        }
+    }
+
+    /**
+     * Преобразует хеш в шестнадцатеричную строку
+     */
+    public static String toHex(byte[] hash) {
+        char[] result = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            result[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+            result[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xF];
+        }
+        return new String(result);
+    }
+
+    /**
+     * Объединяет CRC32C двух последовательных частей данных без их повторного чтения:
+     * результат равен CRC32C конкатенации первой части и второй длиной secondLength.
+     * Сдвиг первой контрольной суммы на secondLength нулевых байт выполняется
+     * возведением матрицы оператора сдвига в степень за O(log n), как crc32_combine в zlib.
+     */
+    public static long combineCrc32c(long firstCrc, long secondCrc, long secondLength) {
+        if (secondLength <= 0) {
+            return firstCrc;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        // Оператор сдвига на один бит
+        odd[0] = CRC32C_POLYNOMIAL;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        // Операторы сдвига на два и четыре бита; далее - по байтам
+        gf2MatrixSquare(even, odd);
+        gf2MatrixSquare(odd, even);
+        long crc = firstCrc;
+        long length = secondLength;
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((length & 1) != 0) {
+                crc = gf2MatrixTimes(even, crc);
+            }
+            length >>>= 1;
+            if (length == 0) {
+                break;
+            }
+            gf2MatrixSquare(odd, even);
+            if ((length & 1) != 0) {
+                crc = gf2MatrixTimes(odd, crc);
+            }
+            length >>>= 1;
+        } while (length != 0);
+        return (crc ^ secondCrc) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Преобразует шестнадцатеричную строку обратно в байты хеша
+     */
+    public static byte[] fromHex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) Integer.parseInt(hex, i * 2, i * 2 + 2, 16);
+        }
+        return result;
+    }
+
+    private static long gf2MatrixTimes(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = gf2MatrixTimes(matrix, matrix[n]);
+        }
+    }
+}
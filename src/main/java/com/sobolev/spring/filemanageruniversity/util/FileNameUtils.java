@@ -0,0 +1,42 @@
+package com.sobolev.spring.filemanageruniversity.util;
+
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Утилитный класс для работы с именами файлов
+ */
+public final class FileNameUtils {
+
+    // Имена вида .<имя>.<назначение>-<UUID>, которые создает сам файловый менеджер
+    private static final Pattern TEMPORARY_NAME = Pattern.compile(
+        "\\..+\\.[a-z]+-[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+    private FileNameUtils() {
+        // Утилитный класс
+    }
+
+    /**
+     * Возвращает расширение файла без точки или пустую строку
+     */
+    public static String getExtension(String filename) {
+        int lastDot = filename.lastIndexOf('.');
+        return lastDot > 0 ? filename.substring(lastDot + 1) : "";
+    }
+
+    /**
+     * Скрытый временный файл рядом с target (в той же директории - для атомарного переименования)
+     * @param purpose назначение файла латиницей, например tmp или link
+     */
+    public static Path temporarySibling(Path target, String purpose) {
+        return target.resolveSibling("." + target.getFileName() + "." + purpose + "-" + UUID.randomUUID());
+    }
+
+    /**
+     * Проверяет, является ли имя временным файлом, созданным temporarySibling
+     */
+    public static boolean isTemporary(String filename) {
+        return TEMPORARY_NAME.matcher(filename).matches();
+    }
+}
@@ -1,9 +1,19 @@
 package com.sobolev.spring.filemanageruniversity.util;
 
 import com.sobolev.spring.filemanageruniversity.config.FileManagerConstants;
+import com.sobolev.spring.filemanageruniversity.dto.BulkResult;
+import com.sobolev.spring.filemanageruniversity.dto.DirectoryEntry;
+import com.sobolev.spring.filemanageruniversity.dto.DirectoryStats;
+import com.sobolev.spring.filemanageruniversity.dto.FileView;
+import com.sobolev.spring.filemanageruniversity.dto.IndexProgress;
+import com.sobolev.spring.filemanageruniversity.dto.LinePage;
+import com.sobolev.spring.filemanageruniversity.dto.LockStats;
+import com.sobolev.spring.filemanageruniversity.dto.OperationView;
+import com.sobolev.spring.filemanageruniversity.dto.SearchResult;
 import com.sobolev.spring.filemanageruniversity.entity.FileEntity;
 
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 
@@ -65,6 +75,9 @@ public final class OutputFormatter {
         if (file.getChecksum() != null) {
             sb.append(String.format("│ Checksum:   %-35s │\n", truncate(file.getChecksum(), 35)));
         }
+        if (file.getCrc32c() != null) {
+            sb.append(String.format("│ CRC32C:     %-35s │\n", String.format("%08x", file.getCrc32c())));
+        }
         sb.append("└─────────────────────────────────────────────────┘");
         
         return sb.toString();
@@ -73,7 +86,7 @@ public final class OutputFormatter {
     /**
      * Форматирует список файлов в таблицу
      */
-    public static String formatFileList(List<FileEntity> files) {
+    public static String formatFileList(List<FileView> files) {
         if (files == null || files.isEmpty()) {
             return "  (список пуст)";
         }
@@ -84,10 +97,10 @@ public final class OutputFormatter {
         sb.append("├─────────────────────────────────────────────────────────────────────────────┤\n");
         
         for (int i = 0; i < files.size(); i++) {
-            FileEntity file = files.get(i);
-            String name = truncate(file.getFilename(), 40);
-            String size = formatFileSize(file.getSize() != null ? file.getSize() : 0);
-            String date = formatDateTime(file.getCreatedAt());
+            FileView file = files.get(i);
+            String name = truncate(file.filename(), 40);
+            String size = formatFileSize(file.size() != null ? file.size() : 0);
+            String date = formatDateTime(file.createdAt());
             
             sb.append(String.format("│ %-40s │ %10s │ %-19s │\n", name, size, date));
             
@@ -100,6 +113,24 @@ public final class OutputFormatter {
         return sb.toString();
     }
     
+    /**
+     * Форматирует страницу истории операций
+     */
+    public static String formatOperationHistory(List<OperationView> operations) {
+        if (operations == null || operations.isEmpty()) {
+            return "  (история пуста)";
+        }
+        
+        StringBuilder sb = new StringBuilder();
+        for (OperationView operation : operations) {
+            sb.append(String.format("  %-19s  %-8s  %s\n",
+                formatDateTime(operation.timestamp()),
+                operation.operationType(),
+                truncate(operation.details(), 80)));
+        }
+        return sb.toString().stripTrailing();
+    }
+    
     /**
      * Форматирует простой список файлов (только имена)
      */
@@ -113,6 +144,136 @@ public final class OutputFormatter {
         return sb.toString().trim();
     }
     
+    /**
+     * Форматирует страницу листинга директории с размерами и датами изменения
+     */
+    public static String formatDirectoryListing(List<DirectoryEntry> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return "  (директория пуста)";
+        }
+        
+        StringBuilder sb = new StringBuilder();
+        for (DirectoryEntry entry : entries) {
+            String size = entry.directory() ? "<DIR>" : formatFileSize(entry.size());
+            String date = formatDateTime(LocalDateTime.ofInstant(entry.lastModified(), ZoneId.systemDefault()));
+            sb.append(String.format("  • %-40s %10s  %s\n", truncate(entry.name(), 40), size, date));
+        }
+        return sb.toString().stripTrailing();
+    }
+    
+    /**
+     * Форматирует статистику директории
+     */
+    public static String formatDirectoryStats(DirectoryStats stats) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("=== Статистика: ").append(stats.path()).append(" ===\n");
+        if (!stats.complete()) {
+            sb.append("⚠️  Обход прерван, показаны данные по пройденной части\n");
+        }
+        sb.append("  Общий размер:  ").append(formatFileSize(stats.totalBytes())).append("\n");
+        sb.append("  Файлов:        ").append(stats.fileCount()).append("\n");
+        sb.append("  Директорий:    ").append(stats.directoryCount()).append("\n");
+        if (stats.inaccessibleCount() > 0) {
+            sb.append("  Недоступно:    ").append(stats.inaccessibleCount()).append("\n");
+        }
+        sb.append("  Время обхода:  ").append(stats.elapsed().toMillis()).append(" мс\n");
+        
+        if (!stats.largestFiles().isEmpty()) {
+            sb.append("\nСамые большие файлы:\n");
+            for (DirectoryEntry file : stats.largestFiles()) {
+                sb.append(String.format("  %10s  %s\n", formatFileSize(file.size()), truncate(file.name(), 60)));
+            }
+        }
+        if (!stats.byExtension().isEmpty()) {
+            sb.append("\nПо типам файлов:\n");
+            stats.byExtension().forEach((extension, extensionStats) -> sb.append(String.format(
+                "  %-12s %10s  (%d файлов)\n", extension.isEmpty() ? "(без расш.)" : extension,
+                formatFileSize(extensionStats.totalBytes()), extensionStats.fileCount())));
+        }
+        return sb.toString().stripTrailing();
+    }
+    
+    /**
+     * Форматирует метрики блокировок файлов; время ожидания - в миллисекундах
+     */
+    public static String formatLockStats(LockStats stats) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("=== Блокировки файлов ===\n");
+        sb.append("  Захватов на чтение:    ").append(stats.readAcquisitions()).append("\n");
+        sb.append("  Захватов на запись:    ").append(stats.writeAcquisitions()).append("\n");
+        sb.append("  С ожиданием:           ").append(stats.contended()).append("\n");
+        sb.append(String.format("  Среднее ожидание:      %.3f мс\n", stats.averageWaitNanos() / 1_000_000));
+        sb.append(String.format("  Максимальное ожидание: %.3f мс\n", stats.maxWaitNanos() / 1_000_000.0));
+        sb.append(String.format("  Оптимистичных чтений:  %d (повторено под блокировкой: %d)",
+            stats.optimisticReads(), stats.optimisticFailures()));
+        return sb.toString();
+    }
+    
+    /**
+     * Форматирует строку прогресса индексации
+     */
+    public static String formatIndexProgress(IndexProgress progress) {
+        return String.format("%s файлов: %d (новых %d, уже в БД %d, ошибок %d), директорий: %d, "
+                + "%.0f файлов/с, %s/с, %d с",
+            progress.finished() ? "✅ Готово." : "  ...",
+            progress.filesScanned(), progress.filesIndexed(), progress.filesSkipped(), progress.failedFiles(),
+            progress.directoriesDone() + progress.directoriesSkipped(),
+            progress.filesPerSecond(), formatFileSize((long) progress.bytesPerSecond()),
+            progress.elapsed().toSeconds());
+    }
+    
+    /**
+     * Форматирует итог массовой операции: сводка и ошибки по элементам
+     */
+    public static String formatBulkResult(BulkResult result) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("✅ Успешно: %d, ❌ ошибок: %d", result.succeeded(), result.failed()));
+        for (BulkResult.ItemResult item : result.items()) {
+            if (!item.success()) {
+                sb.append("\n  • ").append(item.path()).append(": ").append(item.error());
+            }
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Форматирует диапазон строк файла с номерами строк
+     */
+    public static String formatLinePage(LinePage page) {
+        if (page.lines().isEmpty()) {
+            return String.format("  (нет строк; всего в файле: %d)", page.totalLines());
+        }
+        long lastLine = page.firstLine() + page.lines().size() - 1;
+        int width = String.valueOf(lastLine).length();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Строки %d-%d из %d:\n", page.firstLine(), lastLine, page.totalLines()));
+        long number = page.firstLine();
+        for (String line : page.lines()) {
+            sb.append(String.format("%" + width + "d │ %s\n", number++, line));
+        }
+        return sb.toString().stripTrailing();
+    }
+    
+    /**
+     * Форматирует результаты полнотекстового поиска
+     */
+    public static String formatSearchResult(SearchResult result) {
+        long millis = result.elapsed().toMillis();
+        if (result.hits().isEmpty()) {
+            return String.format("  (ничего не найдено, %d мс)", millis);
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Найдено файлов: %d", result.totalHits()));
+        if (result.hits().size() < result.totalHits()) {
+            sb.append(String.format(" (показаны первые %d)", result.hits().size()));
+        }
+        sb.append(String.format(", %d мс\n", millis));
+        for (SearchResult.Hit hit : result.hits()) {
+            sb.append(String.format("  • %s (вхождений: %d)\n", hit.location(), hit.occurrences()));
+        }
+        return sb.toString().stripTrailing();
+    }
+    
     /**
      * Форматирует JSON/XML данные с отступами
      */
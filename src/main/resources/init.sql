@@ -14,6 +14,8 @@ CREATE TABLE file_entity (
     file_type VARCHAR(255),
     is_archived BOOLEAN DEFAULT false,
     checksum VARCHAR(255),
+    crc32c BIGINT,
+    chunk_size INTEGER,
     FOREIGN KEY (owner_id) REFERENCES users(id) ON DELETE CASCADE
 );
 
@@ -26,4 +28,22 @@ CREATE TABLE operation (
                            details VARCHAR(1000),
                            FOREIGN KEY (file_id) REFERENCES file_entity(id) ON DELETE SET NULL,
                            FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
-);
\ No newline at end of file
+);
+
+CREATE TABLE file_chunk_hash (
+                                 id SERIAL PRIMARY KEY,
+                                 file_id BIGINT NOT NULL,
+                                 chunk_index INTEGER NOT NULL,
+                                 hash VARCHAR(64) NOT NULL,
+                                 UNIQUE (file_id, chunk_index),
+                                 FOREIGN KEY (file_id) REFERENCES file_entity(id) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_operation_user_timestamp ON operation (user_id, timestamp);
+CREATE INDEX idx_operation_file_timestamp ON operation (file_id, timestamp);
+CREATE INDEX idx_operation_timestamp_id ON operation (timestamp, id);
+CREATE INDEX idx_file_entity_owner ON file_entity (owner_id);
+CREATE UNIQUE INDEX idx_file_entity_location ON file_entity (location);
+CREATE INDEX idx_file_entity_checksum ON file_entity (checksum);
+-- Поиск по началу пути (LIKE 'prefix%') при удалении директории
+CREATE INDEX idx_file_entity_location_pattern ON file_entity (location text_pattern_ops);
\ No newline at end of file
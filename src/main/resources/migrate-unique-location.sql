@@ -0,0 +1,30 @@
+-- Миграция существующей БД перед созданием уникального индекса idx_file_entity_location.
+-- Выполняется один раз до запуска новой версии: при дубликатах location индекс не создается,
+-- а upsert по ON CONFLICT (location) без него завершается ошибкой.
+-- Для каждого пути остается самая свежая запись (наибольший id), операции дубликатов
+-- переносятся на нее, хеши блоков дубликатов удаляются каскадно.
+BEGIN;
+
+CREATE TEMP TABLE file_entity_duplicate ON COMMIT DROP AS
+SELECT f.id AS duplicate_id, k.keep_id
+FROM file_entity f
+         JOIN (SELECT location, MAX(id) AS keep_id
+               FROM file_entity
+               GROUP BY location
+               HAVING COUNT(*) > 1) k ON k.location = f.location AND f.id <> k.keep_id;
+
+UPDATE operation o
+SET file_id = d.keep_id
+FROM file_entity_duplicate d
+WHERE o.file_id = d.duplicate_id;
+
+DELETE FROM file_entity f
+USING file_entity_duplicate d
+WHERE f.id = d.duplicate_id;
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_file_entity_location ON file_entity (location);
+
+-- Поиск по началу пути (LIKE 'prefix%') при удалении директории
+CREATE INDEX IF NOT EXISTS idx_file_entity_location_pattern ON file_entity (location text_pattern_ops);
+
+COMMIT;
@@ -0,0 +1,81 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentDigestTest {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final long TREE_THRESHOLD = 4 * CHUNK_SIZE;
+
+    @TempDir
+    Path directory;
+
+    private ContentHasher hasher;
+
+    @BeforeEach
+    void setUp() {
+        hasher = new ContentHasher();
+        ReflectionTestUtils.setField(hasher, "chunkSize", CHUNK_SIZE);
+        ReflectionTestUtils.setField(hasher, "treeThreshold", TREE_THRESHOLD);
+        hasher.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        hasher.shutdown();
+    }
+
+    @Test
+    void smallFileGetsFlatHash() throws IOException {
+        ContentHash hash = writeAndDigest((int) TREE_THRESHOLD - 1, 1000);
+
+        assertFalse(hash.isTree());
+        assertEquals(hasher.hashFile(directory.resolve("file.bin")), hash);
+    }
+
+    @Test
+    void crossingThresholdMatchesTreeOfWholeFile() throws IOException {
+        // Порог пересекается посреди порции, а начало файла заканчивается посреди блока
+        ContentHash hash = writeAndDigest((int) TREE_THRESHOLD * 3 + 123, 7001);
+
+        assertTrue(hash.isTree());
+        assertEquals(hasher.hashFile(directory.resolve("file.bin")), hash);
+    }
+
+    /**
+     * Пишет случайные данные порциями так же, как запись файла: сначала хеш, затем канал
+     */
+    private ContentHash writeAndDigest(int size, int portion) throws IOException {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        try (FileChannel channel = FileChannel.open(directory.resolve("file.bin"), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ContentDigest digest = hasher.newDigest(channel);
+            for (int offset = 0; offset < size; offset += portion) {
+                int length = Math.min(portion, size - offset);
+                digest.update(data, offset, length);
+                ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            assertEquals(size, digest.size());
+            return digest.finish();
+        }
+    }
+}
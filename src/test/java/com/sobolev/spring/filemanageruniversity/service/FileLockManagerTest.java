@@ -0,0 +1,151 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileLockManagerTest {
+
+    @TempDir
+    Path directory;
+
+    private FileLockManager manager;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (manager != null) {
+            manager.shutdown();
+        }
+    }
+
+    private FileLockManager create(int stripes, boolean crossProcess) {
+        FileLockManager created = new FileLockManager();
+        ReflectionTestUtils.setField(created, "stripeCount", stripes);
+        ReflectionTestUtils.setField(created, "crossProcess", crossProcess);
+        ReflectionTestUtils.setField(created, "lockFileProperty", directory.resolve("locks.lck").toString());
+        created.init();
+        return created;
+    }
+
+    @Test
+    void oppositeMovesDoNotDeadlock() throws Exception {
+        manager = create(64, false);
+        Path first = directory.resolve("a.txt");
+        Path second = directory.resolve("b.txt");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            Future<?> forward = executor.submit(() -> moveRepeatedly(start, first, second));
+            Future<?> backward = executor.submit(() -> moveRepeatedly(start, second, first));
+            start.countDown();
+            // Полосы берутся по возрастанию индекса, поэтому встречные перемещения завершаются
+            forward.get(30, TimeUnit.SECONDS);
+            backward.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        // Захваты считаются по полосам: на перемещение одна или две
+        assertTrue(manager.getStats().writeAcquisitions() >= 20_000);
+    }
+
+    private Void moveRepeatedly(CountDownLatch start, Path source, Path target) throws Exception {
+        start.await();
+        for (int i = 0; i < 10_000; i++) {
+            try (FileLockManager.Handle ignored = manager.lockForMove(source, target)) {
+                // Критическая секция пуста: проверяется только порядок захвата
+            }
+        }
+        return null;
+    }
+
+    @Test
+    void pathsOnOneStripeCollapseIntoStricterLock() throws Exception {
+        manager = create(1, false);
+        // StampedLock не реентерабелен: без слияния вторая блокировка полосы зависла бы
+        try (FileLockManager.Handle ignored = manager.lockForCopy(directory.resolve("a.txt"),
+                directory.resolve("b.txt"))) {
+            assertEquals(1, manager.getStats().writeAcquisitions());
+            assertEquals(0, manager.getStats().readAcquisitions());
+        }
+    }
+
+    @Test
+    void writeLockExcludesReaders() throws Exception {
+        manager = create(16, false);
+        Path path = directory.resolve("a.txt");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> reader;
+            try (FileLockManager.Handle ignored = manager.lockWrite(path)) {
+                reader = executor.submit(() -> {
+                    try (FileLockManager.Handle read = manager.lockRead(path)) {
+                        return null;
+                    }
+                });
+                Thread.sleep(100);
+                assertFalse(reader.isDone());
+            }
+            reader.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, manager.getStats().contended());
+    }
+
+    @Test
+    void handleClosesOnce() throws Exception {
+        manager = create(16, false);
+        Path path = directory.resolve("a.txt");
+        FileLockManager.Handle handle = manager.lockWrite(path);
+        handle.close();
+        handle.close();
+        try (FileLockManager.Handle ignored = manager.lockWrite(path)) {
+            assertEquals(2, manager.getStats().writeAcquisitions());
+        }
+    }
+
+    @Test
+    void crossProcessLocksDoNotCreateLockedFiles() throws Exception {
+        manager = create(16, true);
+        Path missing = directory.resolve("missing.txt");
+        try (FileLockManager.Handle ignored = manager.lockForMove(missing, directory.resolve("other.txt"))) {
+            assertFalse(Files.exists(missing));
+        }
+        assertTrue(Files.exists(directory.resolve("locks.lck")));
+    }
+
+    @Test
+    void crossProcessSharedLocksAreCounted() throws Exception {
+        manager = create(16, true);
+        Path path = directory.resolve("a.txt");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // Второй читатель того же региона не должен получить OverlappingFileLockException
+            try (FileLockManager.Handle first = manager.lockRead(path)) {
+                executor.submit(() -> {
+                    try (FileLockManager.Handle second = manager.lockRead(path)) {
+                        return null;
+                    }
+                }).get(10, TimeUnit.SECONDS);
+            }
+            try (FileLockManager.Handle ignored = manager.lockWrite(path)) {
+                assertEquals(1, manager.getStats().writeAcquisitions());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.entity.FileEntity;
+import com.sobolev.spring.filemanageruniversity.repository.FileRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FileMetadataCacheTest {
+
+    private static final String LOCATION = "/base/a.txt";
+
+    private FileRepository fileRepository;
+    private FileMetadataCache cache;
+
+    @BeforeEach
+    void setUp() {
+        fileRepository = mock(FileRepository.class);
+        cache = new FileMetadataCache(fileRepository, mock(EntityManager.class));
+        ReflectionTestUtils.setField(cache, "capacity", 100);
+        cache.init();
+    }
+
+    @Test
+    void loadedRowIsCachedWhenPathIsUnchanged() {
+        when(fileRepository.findByLocation(LOCATION)).thenReturn(Optional.of(entity("old")));
+
+        assertEquals("old", cache.findByLocation(LOCATION).orElseThrow().getChecksum());
+        assertEquals("old", cache.findByLocation(LOCATION).orElseThrow().getChecksum());
+        verify(fileRepository, times(1)).findByLocation(LOCATION);
+    }
+
+    @Test
+    void rowLoadedBeforeConcurrentPutDoesNotOverwriteIt() {
+        // Запись завершается, пока читатель без блокировки загружает прежнюю строку
+        when(fileRepository.findByLocation(LOCATION)).thenAnswer(invocation -> {
+            cache.put(entity("new"));
+            return Optional.of(entity("old"));
+        });
+
+        assertEquals("old", cache.findByLocation(LOCATION).orElseThrow().getChecksum());
+        assertEquals("new", cache.findByLocation(LOCATION).orElseThrow().getChecksum());
+        verify(fileRepository, times(1)).findByLocation(LOCATION);
+    }
+
+    @Test
+    void rowLoadedBeforeConcurrentEvictIsNotCached() {
+        when(fileRepository.findByLocation(LOCATION)).thenAnswer(invocation -> {
+            cache.evict(LOCATION);
+            return Optional.of(entity("old"));
+        });
+
+        cache.findByLocation(LOCATION);
+        cache.findByLocation(LOCATION);
+        verify(fileRepository, times(2)).findByLocation(LOCATION);
+    }
+
+    private static FileEntity entity(String checksum) {
+        FileEntity fileEntity = new FileEntity();
+        fileEntity.setId(1L);
+        fileEntity.setLocation(LOCATION);
+        fileEntity.setChecksum(checksum);
+        return fileEntity;
+    }
+}
@@ -0,0 +1,137 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.dto.FollowChunk;
+import com.sobolev.spring.filemanageruniversity.dto.LinePage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LineIndexServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private Path file;
+    private LineIndexService service;
+
+    @BeforeEach
+    void setUp() {
+        file = directory.resolve("log.txt");
+        SecurityService securityService = mock(SecurityService.class);
+        when(securityService.validateAndNormalizePath(anyString()))
+            .thenAnswer(invocation -> directory.resolve(invocation.<String>getArgument(0)));
+        FileLockManager fileLockManager = new FileLockManager();
+        ReflectionTestUtils.setField(fileLockManager, "stripeCount", 16);
+        fileLockManager.init();
+
+        service = new LineIndexService(securityService, mock(AuditService.class), fileLockManager);
+        ReflectionTestUtils.setField(service, "indexDirectory", directory.resolve("index").toString());
+        ReflectionTestUtils.setField(service, "maxLines", 1000);
+    }
+
+    @Test
+    void readsLineRangesAndExtendsIndexOnAppend() throws Exception {
+        write("first\nsecond\r\nthird\n");
+
+        LinePage page = service.readLines("log.txt", 2, 10, null);
+        assertEquals(List.of("second", "third"), page.lines());
+        assertEquals(3, page.totalLines());
+
+        Files.writeString(file, "fourth\nfifth", StandardOpenOption.APPEND);
+        page = service.readLines("log.txt", 4, 5, null);
+        assertEquals(List.of("fourth", "fifth"), page.lines());
+        assertEquals(5, page.totalLines());
+    }
+
+    @Test
+    void rebuildsIndexWhenRewrittenWithSameSize() throws Exception {
+        // Последние байты, по которым считается CRC32C, не меняются - изменение видно только по времени
+        String tail = "x".repeat(5000) + "\n";
+        write("aa\nbb\n" + tail);
+        assertEquals(3, service.readLines("log.txt", 1, 3, null).totalLines());
+
+        write("a\nbbb\n" + tail);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 5000));
+
+        LinePage page = service.readLines("log.txt", 1, 2, null);
+        assertEquals(List.of("a", "bbb"), page.lines());
+    }
+
+    @Test
+    void invalidateDropsIndexAfterWriteInsideFile() throws Exception {
+        String tail = "x".repeat(5000) + "\n";
+        write("aa\n" + tail);
+        assertEquals(2, service.readLines("log.txt", 1, 2, null).totalLines());
+
+        // Запись по смещению и дозапись: файл вырос, а хвост проиндексированной части тот же
+        write("a\na" + tail + "more\n");
+        service.invalidate(file);
+
+        LinePage page = service.readLines("log.txt", 1, 3, null);
+        assertEquals(List.of("a", "a" + "x".repeat(5000), "more"), page.lines());
+    }
+
+    @Test
+    void followReturnsCompleteAppendedLines() throws Exception {
+        write("one\n");
+        LinePage tail = service.tail("log.txt", 10, null);
+        assertEquals(List.of("one"), tail.lines());
+
+        Files.writeString(file, "two\nthr", StandardOpenOption.APPEND);
+        FollowChunk chunk = service.follow("log.txt", tail.endOffset(), tail.fileKey(), null);
+        assertEquals(List.of("two"), chunk.lines());
+        assertFalse(chunk.truncated());
+
+        Files.writeString(file, "ee\n", StandardOpenOption.APPEND);
+        chunk = service.follow("log.txt", chunk.position(), chunk.fileKey(), null);
+        assertEquals(List.of("three"), chunk.lines());
+    }
+
+    @Test
+    void followRestartsWhenFileIsTruncated() throws Exception {
+        write("one\ntwo\n");
+        LinePage tail = service.tail("log.txt", 10, null);
+
+        write("x\n");
+        FollowChunk chunk = service.follow("log.txt", tail.endOffset(), tail.fileKey(), null);
+        assertTrue(chunk.truncated());
+        assertEquals(List.of("x"), chunk.lines());
+    }
+
+    @Test
+    void followRestartsWhenFileIsReplacedByLongerOne() throws Exception {
+        write("one\n");
+        LinePage tail = service.tail("log.txt", 10, null);
+        assumeTrue(tail.fileKey() != null, "ФС не сообщает идентификатор файла");
+
+        // Ротация: новый файл длиннее позиции слежения
+        Path rotated = directory.resolve("log.txt.new");
+        Files.writeString(rotated, "new first\nnew second\n", StandardCharsets.UTF_8);
+        Files.move(rotated, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        FollowChunk chunk = service.follow("log.txt", tail.endOffset(), tail.fileKey(), null);
+        assertTrue(chunk.truncated());
+        assertEquals(List.of("new first", "new second"), chunk.lines());
+    }
+
+    private void write(String content) throws Exception {
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,226 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import com.sobolev.spring.filemanageruniversity.dto.SearchResult;
+import com.sobolev.spring.filemanageruniversity.entity.User;
+import com.sobolev.spring.filemanageruniversity.exception.ValidationException;
+import com.sobolev.spring.filemanageruniversity.util.FileNameUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+class SearchIndexServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private Path files;
+    private Path indexDirectory;
+    private FileLockManager fileLockManager;
+    private SearchIndexService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        files = Files.createDirectories(directory.resolve("files"));
+        indexDirectory = directory.resolve("index");
+        fileLockManager = new FileLockManager();
+        ReflectionTestUtils.setField(fileLockManager, "stripeCount", 16);
+        fileLockManager.init();
+        service = start(8, 1000);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        service.shutdown();
+    }
+
+    /**
+     * @param maxBufferedDocs 1 - каждый документ сразу записывается отдельным сегментом
+     */
+    private SearchIndexService start(int maxSegments, int maxBufferedDocs) throws Exception {
+        SearchIndexService started = new SearchIndexService(fileLockManager, mock(AuditService.class),
+            mock(JdbcTemplate.class));
+        ReflectionTestUtils.setField(started, "enabled", true);
+        ReflectionTestUtils.setField(started, "indexDirectory", indexDirectory.toString());
+        ReflectionTestUtils.setField(started, "maxFileSize", 1_000_000L);
+        ReflectionTestUtils.setField(started, "flushIntervalMs", 60_000L);
+        ReflectionTestUtils.setField(started, "maxBufferedDocs", maxBufferedDocs);
+        ReflectionTestUtils.setField(started, "maxSegments", maxSegments);
+        ReflectionTestUtils.setField(started, "maxResults", 100);
+        ReflectionTestUtils.setField(started, "maxPrefixTerms", 3);
+        started.start();
+        return started;
+    }
+
+    private void restart(int maxSegments, int maxBufferedDocs) throws Exception {
+        service.shutdown();
+        service = start(maxSegments, maxBufferedDocs);
+    }
+
+    private Path index(String name, String content, long ownerId) throws Exception {
+        Path file = files.resolve(name);
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        service.scheduleIndex(file, ownerId);
+        return file;
+    }
+
+    /**
+     * Дожидается выполнения поставленных задач индексации и сбрасывает буфер
+     */
+    private void awaitIndexer() throws Exception {
+        ExecutorService indexer = (ExecutorService) ReflectionTestUtils.getField(service, "indexer");
+        indexer.submit(() -> ReflectionTestUtils.invokeMethod(service, "flush")).get();
+    }
+
+    private List<String> search(String query, long userId) throws Exception {
+        SearchResult result = service.search(query, userWithId(userId));
+        return result.hits().stream()
+            .map(hit -> files.relativize(Path.of(hit.location())).toString())
+            .toList();
+    }
+
+    @Test
+    void termsAreCombinedWithAndAndFilteredByOwner() throws Exception {
+        index("a.txt", "Hello world", 1);
+        index("b.txt", "hello there", 1);
+        index("c.txt", "hello world", 2);
+        awaitIndexer();
+
+        assertEquals(List.of("a.txt", "b.txt"), search("hello", 1));
+        assertEquals(List.of("a.txt"), search("HELLO world", 1));
+        assertEquals(List.of("c.txt"), search("world", 2));
+        assertEquals(List.of(), search("missing", 1));
+    }
+
+    @Test
+    void phraseRequiresAdjacentWords() throws Exception {
+        index("fox.txt", "the quick brown fox jumps", 1);
+        index("reversed.txt", "fox brown quick", 1);
+        awaitIndexer();
+
+        assertEquals(List.of("fox.txt"), search("\"quick brown fox\"", 1));
+        assertEquals(List.of("reversed.txt"), search("\"fox brown\"", 1));
+        // Слово из нескольких частей ищется как фраза
+        assertEquals(List.of("fox.txt"), search("brown-fox", 1));
+        assertEquals(List.of(), search("\"quick fox\"", 1));
+    }
+
+    @Test
+    void prefixExpandsToMatchingTerms() throws Exception {
+        index("a.txt", "world words", 1);
+        index("b.txt", "worm", 1);
+        index("c.txt", "sword", 1);
+        awaitIndexer();
+
+        assertEquals(List.of("a.txt"), search("word*", 1));
+        assertEquals(List.of("a.txt", "b.txt"), search("wor*", 1));
+        assertEquals(List.of("a.txt"), search("wor* worl*", 1));
+    }
+
+    @Test
+    void prefixMatchingTooManyTermsIsRejected() throws Exception {
+        index("a.txt", "aa ab ac ad", 1);
+        awaitIndexer();
+
+        assertThrows(ValidationException.class, () -> search("a*", 1));
+    }
+
+    @Test
+    void rankingByOccurrences() throws Exception {
+        index("once.txt", "apple", 1);
+        index("thrice.txt", "apple apple apple", 1);
+        awaitIndexer();
+
+        assertEquals(List.of("thrice.txt", "once.txt"), search("apple", 1));
+    }
+
+    @Test
+    void updatesAndRemovalsSurviveMerge() throws Exception {
+        restart(2, 1);
+        Path first = index("a.txt", "alpha common", 1);
+        Path second = index("b.txt", "beta common", 1);
+        index("c.txt", "gamma common", 1);
+        index("d.txt", "delta common", 1);
+        awaitIndexer();
+
+        Files.writeString(first, "changed common", StandardCharsets.UTF_8);
+        service.scheduleIndex(first, 1);
+        service.scheduleRemove(second);
+        Files.delete(second);
+        index("e.txt", "epsilon common", 1);
+        awaitIndexer();
+
+        assertEquals(List.of("a.txt", "c.txt", "d.txt", "e.txt"), search("common", 1));
+        assertEquals(List.of(), search("alpha", 1));
+        assertEquals(List.of("a.txt"), search("changed", 1));
+        assertEquals(List.of(), search("beta", 1));
+
+        // После перезапуска журнал удалений и слитые сегменты дают то же состояние
+        restart(2, 1);
+        assertEquals(List.of("a.txt", "c.txt", "d.txt", "e.txt"), search("common", 1));
+        assertEquals(List.of(), search("beta", 1));
+    }
+
+    @Test
+    void loadDropsSourcesOfInterruptedMergeAndStrayFiles() throws Exception {
+        index("a.txt", "alpha common", 1);
+        awaitIndexer();
+        index("b.txt", "beta common", 1);
+        awaitIndexer();
+        service.shutdown();
+
+        // Слияние записало новый сегмент, но не успело удалить источники
+        List<SearchSegment> sources = List.of(SearchSegment.open(indexDirectory, 0),
+            SearchSegment.open(indexDirectory, 1));
+        try (SearchSegment.Writer writer = new SearchSegment.Writer(indexDirectory, 2)) {
+            for (String term : List.of("alpha", "beta", "common")) {
+                List<SearchSegment.Posting> postings = new ArrayList<>();
+                for (SearchSegment source : sources) {
+                    postings.addAll(source.read(term));
+                }
+                writer.addTerm(term, postings);
+            }
+            List<SearchSegment.Doc> docs = sources.stream().flatMap(source -> source.docs().stream()).toList();
+            writer.finish(docs).close();
+        }
+        for (SearchSegment source : sources) {
+            source.close();
+        }
+        // Списки вхождений без словаря и временный файл от прерванной записи
+        Files.writeString(SearchSegment.postPath(indexDirectory, 3), "garbage");
+        Files.writeString(FileNameUtils.temporarySibling(SearchSegment.dictPath(indexDirectory, 4), "tmp"), "garbage");
+
+        service = start(8, 1000);
+
+        assertEquals(List.of("a.txt", "b.txt"), search("common", 1));
+        // Вхождения не удваиваются источниками слияния
+        assertEquals(1, service.search("alpha", userWithId(1)).hits().get(0).occurrences());
+        assertFalse(Files.exists(SearchSegment.dictPath(indexDirectory, 0)));
+        assertFalse(Files.exists(SearchSegment.dictPath(indexDirectory, 1)));
+        assertFalse(Files.exists(SearchSegment.postPath(indexDirectory, 3)));
+        try (Stream<Path> stray = Files.list(indexDirectory)) {
+            assertEquals(0, stray.filter(path -> path.getFileName().toString().startsWith(".")).count());
+        }
+    }
+
+    private static User userWithId(long id) {
+        User user = new User();
+        user.setId(id);
+        return user;
+    }
+}
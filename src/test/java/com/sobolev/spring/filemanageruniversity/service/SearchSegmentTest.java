@@ -0,0 +1,120 @@
+package com.sobolev.spring.filemanageruniversity.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchSegmentTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void varIntRoundTrip() throws IOException {
+        long[] values = {0, 1, 127, 128, 16_383, 16_384, Integer.MAX_VALUE, 0xFFFFFFFFL, Long.MAX_VALUE, -1};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (long value : values) {
+            SearchSegment.writeVarLong(out, value);
+        }
+        SearchSegment.writeVarInt(out, -1);
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        for (long value : values) {
+            assertEquals(value, SearchSegment.readVarLong(in));
+        }
+        // int пишется как беззнаковое 32-битное значение
+        assertEquals(-1, SearchSegment.readVarInt(in));
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    void varIntUsesOneBytePerSevenBits() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SearchSegment.writeVarInt(out, 127);
+        assertEquals(1, out.size());
+        SearchSegment.writeVarInt(out, 128);
+        assertEquals(3, out.size());
+    }
+
+    @Test
+    void truncatedVarIntFails() {
+        ByteArrayInputStream in = new ByteArrayInputStream(new byte[] {(byte) 0x80, (byte) 0x80});
+        assertThrows(EOFException.class, () -> SearchSegment.readVarLong(in));
+    }
+
+    @Test
+    void writtenSegmentReadsBackDocsAndPostings() throws IOException {
+        List<SearchSegment.Doc> docs = List.of(
+            new SearchSegment.Doc(3, "/base/a.txt", 1),
+            new SearchSegment.Doc(200, "/base/каталог/b.txt", 70_000),
+            new SearchSegment.Doc(100_000, "/base/c.txt", 1));
+        List<SearchSegment.Posting> apple = List.of(
+            new SearchSegment.Posting(3, new int[] {0, 5, 1000}),
+            new SearchSegment.Posting(100_000, new int[] {42}));
+        List<SearchSegment.Posting> pear = List.of(new SearchSegment.Posting(200, new int[] {1, 2, 3}));
+
+        try (SearchSegment.Writer writer = new SearchSegment.Writer(directory, 7);
+             SearchSegment segment = finish(writer, docs, apple, pear)) {
+            assertTrue(Files.exists(SearchSegment.dictPath(directory, 7)));
+            assertEquals(docs, segment.docs());
+            assertEquals(List.of("apple", "pear"), List.copyOf(segment.terms().keySet()));
+            assertEquals(2, segment.terms().get("apple").docFreq());
+
+            assertPostings(apple, segment.read("apple"));
+            assertPostings(pear, segment.read("pear"));
+            assertTrue(segment.read("plum").isEmpty());
+        }
+
+        SearchSegment reopened = SearchSegment.open(directory, 7);
+        try (reopened) {
+            assertPostings(apple, reopened.read("apple"));
+        }
+    }
+
+    private static SearchSegment finish(SearchSegment.Writer writer, List<SearchSegment.Doc> docs,
+                                        List<SearchSegment.Posting> apple,
+                                        List<SearchSegment.Posting> pear) throws IOException {
+        writer.addTerm("apple", apple);
+        writer.addTerm("empty", List.of());
+        writer.addTerm("pear", pear);
+        return writer.finish(docs);
+    }
+
+    @Test
+    void unfinishedWriterLeavesNoFiles() throws IOException {
+        try (SearchSegment.Writer writer = new SearchSegment.Writer(directory, 1)) {
+            writer.addTerm("apple", List.of(new SearchSegment.Posting(0, new int[] {0})));
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+        assertFalse(Files.exists(SearchSegment.dictPath(directory, 1)));
+    }
+
+    @Test
+    void segmentNumberIsParsedFromDictName() {
+        assertEquals(12, SearchSegment.numberOf(SearchSegment.dictPath(directory, 12)));
+    }
+
+    private static void assertPostings(List<SearchSegment.Posting> expected, List<SearchSegment.Posting> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).docId(), actual.get(i).docId());
+            assertArrayEquals(expected.get(i).positions(), actual.get(i).positions());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.sobolev.spring.filemanageruniversity.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ChecksumUtilsTest {
+
+    @Test
+    void combineCrc32cMatchesCrcOfConcatenation() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            byte[] data = new byte[random.nextInt(1 << 16)];
+            random.nextBytes(data);
+            int split = data.length == 0 ? 0 : random.nextInt(data.length + 1);
+
+            long combined = ChecksumUtils.combineCrc32c(crc(data, 0, split), crc(data, split, data.length),
+                data.length - split);
+
+            assertEquals(crc(data, 0, data.length), combined, "длина " + data.length + ", разрез " + split);
+        }
+    }
+
+    @Test
+    void combineCrc32cWithEmptyParts() {
+        byte[] data = "содержимое файла".getBytes(StandardCharsets.UTF_8);
+        long whole = crc(data, 0, data.length);
+
+        assertEquals(whole, ChecksumUtils.combineCrc32c(whole, crc(data, 0, 0), 0));
+        assertEquals(whole, ChecksumUtils.combineCrc32c(crc(data, 0, 0), whole, data.length));
+    }
+
+    @Test
+    void combineCrc32cAcrossSequentialAppends() {
+        // Как при дозаписях: CRC32C файла обновляется по CRC32C каждой новой части
+        Random random = new Random(11);
+        byte[] data = new byte[1 << 20];
+        random.nextBytes(data);
+        long crc = crc(data, 0, 0);
+        int position = 0;
+        while (position < data.length) {
+            int end = Math.min(data.length, position + 1 + random.nextInt(40_000));
+            crc = ChecksumUtils.combineCrc32c(crc, crc(data, position, end), end - position);
+            position = end;
+        }
+
+        assertEquals(crc(data, 0, data.length), crc);
+    }
+
+    @Test
+    void hexRoundTrip() {
+        byte[] hash = new byte[32];
+        new Random(7).nextBytes(hash);
+
+        assertArrayEquals(hash, ChecksumUtils.fromHex(ChecksumUtils.toHex(hash)));
+    }
+
+    private static long crc(byte[] data, int from, int to) {
+        CRC32C crc = new CRC32C();
+        crc.update(data, from, to - from);
+        return crc.getValue();
+    }
+}